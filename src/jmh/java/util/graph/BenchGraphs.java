@@ -0,0 +1,72 @@
+package util.graph;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Graph files for the benchmarks. A name ending in .graph is a file of
+ * src/test/resources, a name like rmat-1M or rmat-100M is a synthetic
+ * R-MAT graph with about that many edges (K, M or B), written once in METIS
+ * format by {@link GraphGenerator} to the temporary directory and reused by
+ * later runs. The cached file is named after the generator parameters, and
+ * a loaded R-MAT graph is checked against the edge count of its header.
+ */
+final class BenchGraphs {
+
+    private static final long SEED = 42;
+
+    private BenchGraphs() {}
+
+    static File file(String name) throws IOException {
+        if (name.endsWith(".graph")) return new File("src/test/resources/" + name);
+        if (!name.startsWith("rmat-")) throw new IllegalArgumentException(
+                "unknown benchmark graph " + name);
+        long edges = edges(name.substring("rmat-".length()));
+        // edge factor 16
+        int scale = Math.max(4, 64 - Long.numberOfLeadingZeros(edges / 16 - 1));
+        File dir = new File(System.getProperty("java.io.tmpdir"), "util-graph-bench");
+        File f = new File(dir, "rmat-scale" + scale + "-edges" + edges + "-seed" + SEED
+                + ".graph");
+        if (!f.exists()) {
+            dir.mkdirs();
+            File tmp = File.createTempFile(name, ".tmp", dir);
+            GraphGenerator.rmat(scale, edges).seed(SEED).writeMetis(tmp);
+            if (!tmp.renameTo(f)) tmp.delete();
+        }
+        return f;
+    }
+
+    static Graph load(String name, String impl) throws IOException {
+        File f = file(name);
+        Graph g = newGraph(impl).loadFrom(f);
+        if (name.startsWith("rmat-") && g.volume() != 2 * headerEdges(f)) {
+            throw new IllegalStateException(name + " loaded with volume " + g.volume()
+                    + ", expected twice the " + headerEdges(f) + " edges of the header");
+        }
+        return g;
+    }
+
+    private static long headerEdges(File f) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(f))) {
+            return Long.parseLong(in.readLine().trim().split("\\s+")[1]);
+        }
+    }
+
+    static Graph newGraph(String impl) {
+        switch (impl) {
+            case "CsrGraph": return new CsrGraph();
+            case "MappedGraph": return new MappedGraph();
+            case "ImmutableBitSetGraph": return new ImmutableBitSetGraph();
+            default: return new BitSetGraph();
+        }
+    }
+
+    private static long edges(String size) {
+        char unit = size.charAt(size.length() - 1);
+        long scale = unit == 'K' ? 1000 : unit == 'M' ? 1000000 : unit == 'B' ? 1000000000 : 1;
+        return Long.parseLong(scale == 1 ? size : size.substring(0, size.length() - 1))
+                * scale;
+    }
+}
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Spliterator;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -28,12 +29,16 @@ import java.util.stream.StreamSupport;
 public class GraphBench {
 
     private Graph g;
-    private Stream<Vertex> seeds;
+    private List<Vertex> selection;
+    private PprPush push;
 
-//    @Param({"hep-th.graph", "tiny_01.graph", "pprcd.py.graph"})
+//    @Param({"hep-th.graph", "tiny_01.graph", "pprcd.py.graph", "rmat-1M"})
     @Param({"hep-th.graph"})
     private String graph;
 
+    @Param({"BitSetGraph", "CsrGraph"})
+    private String impl;
+
     @Param({"0.99"})
     private double alpha;
 
@@ -43,60 +48,92 @@ public class GraphBench {
     @Param({"4", "8", "16", "32", "64", "128"})
     private int distance;
 
-    @Setup(Level.Invocation)
+    @Setup
     public void setup() throws IOException {
-        g = new BitSetGraph().loadFrom(new File("src/test/resources/" + graph));
-        List<Vertex> selection = g.selectSeeds(distance);
-        seeds = selection.parallelStream();
+        g = BenchGraphs.load(graph, impl);
+        selection = g.selectSeeds(distance);
+        push = new PprPush(g);
     }
 
     @Benchmark
-    public Partition parStream(GraphBench state) {
-        return state.seeds.map(s ->
+    public Partition parStream() {
+        return selection.parallelStream().map(s ->
                 g.communityDetectionPpr(s, alpha, tolerance))
                 .collect(Partition::new,
                         Partition::add,
                         Partition::addAll);
     }
 
+    /**
+     * Push phase only, reusing one kernel for all seeds. Allocation rate is
+     * reported with: java -cp benchmarks.jar org.openjdk.jmh.Main
+     * GraphBench.push -prof gc
+     */
+    @Benchmark
+    public long push() {
+        long pushes = 0;
+        for (Vertex s : selection) {
+            push.run(s.index(), alpha, tolerance);
+            pushes += push.pushes();
+        }
+        return pushes;
+    }
+
     @Benchmark
     public List<Vertex> seedSelection() {
         return g.selectSeeds(distance);
     }
 
+    @Benchmark
+    public int[] parallelSeedSelection() {
+        return new SeedSelector(g).parallel(true).selectIndices(distance);
+    }
+
 
     @Benchmark
     public Partition seqStream() {
-        return seeds.sequential().map(s ->
+        return selection.stream().map(s ->
                 g.communityDetectionPpr(s, alpha, tolerance))
                 .collect(Partition::new,
                         Partition::add,
                         Partition::addAll);
     }
 
+    /**
+     * Seeds sorted by estimated cost, run longest first with work stealing
+     * on a pool of as many threads as processors.
+     */
     @Benchmark
-    public Partition executorWorkStealing() throws InterruptedException {
-        Partition p = new Partition();
-        ExecutorService service = Executors.newWorkStealingPool();
-        seeds.forEach( s -> {
-            service.submit(() -> p.add(g.communityDetectionPpr(s, alpha,
-                    tolerance)));
-        });
-        service.shutdown();
-        service.awaitTermination(1, TimeUnit.DAYS);
-        return p;
+    public Partition scheduled() {
+        try (DetectionScheduler scheduler = new DetectionScheduler(g,
+                Runtime.getRuntime().availableProcessors())) {
+            return scheduler.run(selection, alpha, tolerance);
+        }
     }
 
     @Benchmark
-    public Partition executorCachedThread() throws InterruptedException {
-        Partition p = new Partition();
-        ExecutorService service = Executors.newCachedThreadPool();
-        seeds.forEach( s -> {
-            service.submit(() -> p.add(g.communityDetectionPpr(s, alpha,
-                    tolerance)));
-        });
+    public Partition executorWorkStealing() throws Exception {
+        return submitAll(Executors.newWorkStealingPool());
+    }
+
+    @Benchmark
+    public Partition executorCachedThread() throws Exception {
+        return submitAll(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * Detect the community of every seed on service and collect the blocks
+     * from their futures, Partition is not thread safe.
+     */
+    private Partition submitAll(ExecutorService service) throws Exception {
+        List<Future<Block>> blocks = new ArrayList<>(selection.size());
+        for (Vertex s : selection) {
+            blocks.add(service.submit(() ->
+                    g.communityDetectionPpr(s, alpha, tolerance)));
+        }
         service.shutdown();
-        service.awaitTermination(1, TimeUnit.DAYS);
+        Partition p = new Partition();
+        for (Future<Block> b : blocks) p.add(b.get());
         return p;
     }
 
@@ -0,0 +1,77 @@
+package util.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap footprint and full GC pause time with a loaded graph, comparing
+ * heap and off heap graph implementations. The heap used by the graph is
+ * printed after setup; the fullGc score is the pause of a full collection
+ * with the graph reachable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class HeapBench {
+
+    @Param({"hep-th.graph"})
+    private String graph;
+
+    @Param({"BitSetGraph", "CsrGraph", "MappedGraph", "ImmutableBitSetGraph"})
+    private String impl;
+
+    private Graph g;
+
+    private static long heapUsed() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        long before = heapUsed();
+        switch (impl) {
+            case "CsrGraph": g = new CsrGraph(); break;
+            case "MappedGraph": g = new MappedGraph(); break;
+            case "ImmutableBitSetGraph": g = new ImmutableBitSetGraph(); break;
+            default: g = new BitSetGraph();
+        }
+        g.loadFrom(new File("src/test/resources/" + graph));
+        long after = heapUsed();
+        System.out.printf("%n# %s %s: %d vertices, %d edges, %.1f MB heap%n",
+                impl, graph, g.numVertices(), g.numEdges(),
+                (after - before) / (1024. * 1024.));
+    }
+
+    @Benchmark
+    public Graph fullGc() {
+        System.gc();
+        return g;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(HeapBench.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result(HeapBench.class.getName() + ".csv")
+                .build();
+        new Runner(opt).run();
+    }
+}
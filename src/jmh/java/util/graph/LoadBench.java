@@ -0,0 +1,99 @@
+package util.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the scanner based METIS reader with the memory mapped parallel
+ * one, and sequential addEdge with the concurrent {@link GraphBuilder}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class LoadBench {
+
+    @Param({"hep-th.graph", "rmat-1M"})
+    private String graph;
+
+    @Param({"BitSetGraph", "CsrGraph"})
+    private String impl;
+
+    private File file;
+    private int[] sources, targets;
+
+    @Setup
+    public void setup() throws IOException {
+        file = BenchGraphs.file(graph);
+        Graph g = new CsrGraph().loadFrom(file);
+        IntQueue s = new IntQueue(), t = new IntQueue();
+        for (int v = 0; v < g.indexBound(); v++) {
+            for (int u : g.neighborArray(v)) {
+                if (u < v) continue;
+                s.add(v);
+                t.add(u);
+            }
+        }
+        sources = new int[s.size()];
+        targets = new int[t.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = s.remove();
+            targets[i] = t.remove();
+        }
+    }
+
+    @Benchmark
+    public Graph loadMetis() throws IOException {
+        Graph g = BenchGraphs.newGraph(impl).loadMetis(file);
+        g.optimize();
+        return g;
+    }
+
+    @Benchmark
+    public Graph loadMetisMapped() throws IOException {
+        Graph g = BenchGraphs.newGraph(impl).loadMetisMapped(file);
+        g.optimize();
+        return g;
+    }
+
+    @Benchmark
+    public Graph buildSequential() {
+        Graph g = BenchGraphs.newGraph(impl);
+        for (int i = 0; i < sources.length; i++) g.addEdge(sources[i], targets[i]);
+        g.optimize();
+        return g;
+    }
+
+    /**
+     * The same edges as buildSequential, added in batches of 4096 from the
+     * common pool.
+     */
+    @Benchmark
+    public Graph buildParallel() {
+        GraphBuilder builder = new GraphBuilder();
+        int batches = (sources.length + 4095) / 4096;
+        IntStream.range(0, batches).parallel().forEach(b -> builder.addEdges(
+                sources, targets, b * 4096, Math.min(sources.length, (b + 1) * 4096)));
+        return builder.build(BenchGraphs.newGraph(impl));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(LoadBench.class.getSimpleName())
+                .forks(3)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .resultFormat(ResultFormatType.CSV)
+                .result(LoadBench.class.getName() + ".csv")
+                .build();
+        new Runner(opt).run();
+    }
+}
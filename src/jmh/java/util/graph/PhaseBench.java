@@ -0,0 +1,196 @@
+package util.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of community detection benchmarked one at a time, so that a
+ * regression shows up in the phase that caused it: loading a METIS file,
+ * optimize, push, sweep, join, scoring and seed selection.
+ * <p>
+ * Graphs are files of src/test/resources or synthetic R-MAT graphs, see
+ * {@link BenchGraphs}. Larger graphs are selected on the command line,
+ * e.g. -p graph=rmat-10M,rmat-100M. Main adds the GC profiler and writes
+ * util.graph.PhaseBench.csv in the format read by plots.ipynb.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PhaseBench {
+
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        @Param({"hep-th.graph", "rmat-1M"})
+        String graph;
+
+        @Param({"BitSetGraph", "CsrGraph"})
+        String impl;
+
+        File file;
+
+        @Setup
+        public void setup() throws IOException {
+            file = BenchGraphs.file(graph);
+        }
+    }
+
+    /**
+     * A graph loaded but not optimized. Setup runs before every invocation,
+     * which is only acceptable because optimize takes milliseconds.
+     */
+    @State(Scope.Thread)
+    public static class Unoptimized {
+
+        Graph g;
+
+        @Setup(Level.Invocation)
+        public void setup(Input input) throws IOException {
+            g = BenchGraphs.newGraph(input.impl).loadMetisMapped(input.file);
+        }
+    }
+
+    /**
+     * A loaded graph, its seeds at the given distance, their rankings and
+     * the partition found from them, all computed once per trial.
+     */
+    @State(Scope.Benchmark)
+    public static class Detection {
+
+        @Param({"4", "16", "64"})
+        int distance;
+
+        @Param({"0.99"})
+        double alpha;
+
+        @Param({"0.0001"})
+        double tolerance;
+
+        Graph g;
+        int[] seeds;
+        int[][] rankings;
+        Partition partition;
+
+        @Setup
+        public void setup(Input input) throws IOException {
+            g = BenchGraphs.newGraph(input.impl).loadFrom(input.file);
+            List<Vertex> selection = g.selectSeeds(distance);
+            seeds = selection.stream().mapToInt(Vertex::index).toArray();
+            rankings = new int[seeds.length][];
+            PprPush push = new PprPush(g);
+            for (int i = 0; i < seeds.length; i++) {
+                push.run(seeds[i], alpha, tolerance);
+                rankings[i] = rank(push);
+            }
+            partition = g.communityDetectionPpr(selection, alpha, tolerance);
+        }
+
+        private int[] rank(PprPush push) {
+            int n = push.size();
+            int[] order = new int[n];
+            double[] scores = new double[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = push.vertex(i);
+                scores[i] = push.estimate(i) / g.degreeOf(order[i]);
+            }
+            Sorting.byScoreDescending(order, scores, 0, n);
+            return order;
+        }
+    }
+
+    /**
+     * Kernels reused across invocations, as the detection workspaces do.
+     */
+    @State(Scope.Thread)
+    public static class Kernels {
+
+        PprPush push;
+        SweepCut sweep;
+
+        @Setup
+        public void setup(Detection detection) {
+            push = new PprPush(detection.g);
+            sweep = new SweepCut(detection.g);
+        }
+    }
+
+    @Benchmark
+    public Graph loadMetis(Input input) throws IOException {
+        return BenchGraphs.newGraph(input.impl).loadMetisMapped(input.file);
+    }
+
+    @Benchmark
+    public Graph optimize(Unoptimized unoptimized) {
+        unoptimized.g.optimize();
+        return unoptimized.g;
+    }
+
+    /**
+     * Push from every seed, one kernel for all of them.
+     */
+    @Benchmark
+    public long push(Detection detection, Kernels kernels) {
+        long pushes = 0;
+        for (int s : detection.seeds) {
+            kernels.push.run(s, detection.alpha, detection.tolerance);
+            pushes += kernels.push.pushes();
+        }
+        return pushes;
+    }
+
+    /**
+     * Sweep over the ranking of every seed.
+     */
+    @Benchmark
+    public long sweep(Detection detection, Kernels kernels) {
+        long size = 0;
+        for (int[] ranking : detection.rankings) {
+            size += kernels.sweep.run(ranking, ranking.length);
+        }
+        return size;
+    }
+
+    @Benchmark
+    public Graph join(Detection detection) {
+        return detection.g.join(detection.partition).graph();
+    }
+
+    @Benchmark
+    public Quality.Score[] quality(Detection detection) {
+        return new Quality(detection.g).score(detection.partition);
+    }
+
+    @Benchmark
+    public double conductance(Detection detection) {
+        double sum = 0;
+        for (Block b : detection.partition) sum += detection.g.conductance(b);
+        return sum;
+    }
+
+    @Benchmark
+    public int[] seedSelection(Detection detection) {
+        return new SeedSelector(detection.g).selectIndices(detection.distance);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PhaseBench.class.getSimpleName())
+                .forks(3)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result(PhaseBench.class.getName() + ".csv")
+                .build();
+        new Runner(opt).run();
+    }
+}
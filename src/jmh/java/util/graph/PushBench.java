@@ -0,0 +1,79 @@
+package util.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push from the same seeds in every {@link PushOrder}. Besides the time
+ * per operation, the pushes counter reports the number of pushes per
+ * operation, so that the order with the fewest pushes and the order with
+ * the lowest time can be compared per graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class PushBench {
+
+    @Param({"hep-th.graph"})
+    private String graph;
+
+    @Param({"CsrGraph", "BitSetGraph"})
+    private String impl;
+
+    @Param({"FIFO", "MAX_RESIDUAL", "BUCKETS"})
+    private String order;
+
+    @Param({"0.001", "0.0001"})
+    private double tolerance;
+
+    private PprPush push;
+    private int[] seeds;
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Counters {
+        public long pushes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pushes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        Graph g = BenchGraphs.load(graph, impl);
+        seeds = g.selectSeeds(4).stream().mapToInt(Vertex::index).toArray();
+        push = new PprPush(g).order(PushOrder.valueOf(order));
+    }
+
+    @Benchmark
+    public long push(Counters counters) {
+        long pushes = 0;
+        for (int s : seeds) {
+            push.run(s, 0.99, tolerance);
+            pushes += push.pushes();
+        }
+        counters.pushes += pushes;
+        return pushes;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(PushBench.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .resultFormat(ResultFormatType.CSV)
+                .result(PushBench.class.getName() + ".csv")
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,156 @@
+package util.graph;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.LinuxPerfNormProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Community detection for the same seeds, with the graph relabeled in every
+ * {@link VertexOrder}. Run through main to add the perfnorm profiler,
+ * which reports cache misses per operation (needs Linux perf). Before the
+ * benchmark, main prints the misses of a simulated L1 cache over the reads
+ * of the adjacency arrays, see {@link TracedGraph}, which needs no perf
+ * and does not vary between runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ReorderBench {
+
+    @Param({"hep-th.graph"})
+    private String graph;
+
+    @Param({"CsrGraph", "BitSetGraph"})
+    private String impl;
+
+    @Param({"NONE", "DEGREE", "BFS", "RCM"})
+    private String order;
+
+    @Param({"0.0001"})
+    private double tolerance;
+
+    private Graph g;
+    private int[] seeds;
+
+    @Setup
+    public void setup() throws IOException {
+        g = BenchGraphs.newGraph(impl);
+        g.loadFrom(new File("src/test/resources/" + graph),
+                VertexOrder.valueOf(order));
+        // the same vertices of the file in every order
+        Graph file = new CsrGraph().loadFrom(new File("src/test/resources/" + graph));
+        seeds = file.selectSeeds(4).stream()
+                .mapToInt(v -> g.relabeledIndex(v.index())).toArray();
+    }
+
+    @Benchmark
+    public long communityDetection() {
+        long size = 0;
+        for (int s : seeds) {
+            size += g.communityDetectionPpr(g.vertex(s), 0.99, tolerance).size();
+        }
+        return size;
+    }
+
+    /**
+     * Csr graph that replays the reads of its offset and neighbor arrays
+     * through a model of a 32 KiB, 8-way set associative LRU cache with 64
+     * byte lines. Only the adjacency is modeled: the residual and estimate
+     * maps hash vertex indices, so their locality does not depend on the
+     * order.
+     */
+    static final class TracedGraph extends CsrGraph {
+        private static final int LINE = 64, SETS = 64, WAYS = 8;
+
+        // per set the lines held, most recently used first, 0 when empty
+        private final long[] lines = new long[SETS * WAYS];
+        private long[] start;
+        private long neighborBase;
+        long reads, misses;
+
+        /**
+         * Start tracing with an empty cache, once the graph is loaded.
+         */
+        void trace() {
+            int n = indexBound();
+            start = new long[n + 1];
+            for (int v = 0; v < n; v++) start[v + 1] = start[v] + super.degreeOf(v);
+            neighborBase = (4L * (n + 1) / LINE + 1) * LINE;
+            Arrays.fill(lines, 0);
+            reads = misses = 0;
+        }
+
+        private void read(long address) {
+            long line = address / LINE + 1;
+            int set = (int) (line % SETS) * WAYS, way = 0;
+            while (way < WAYS - 1 && lines[set + way] != line) way++;
+            reads++;
+            if (lines[set + way] != line) misses++;
+            System.arraycopy(lines, set, lines, set + 1, way);
+            lines[set] = line;
+        }
+
+        @Override
+        public int degreeOf(int v) {
+            if (start != null && v >= 0 && v + 1 < start.length) {
+                read(4L * v);
+                read(4L * (v + 1));
+            }
+            return super.degreeOf(v);
+        }
+
+        @Override
+        public void forEachNeighbor(int v, IntConsumer action) {
+            if (start != null && degreeOf(v) > 0) {
+                for (long k = start[v]; k < start[v + 1]; k++) read(neighborBase + 4 * k);
+            }
+            super.forEachNeighbor(v, action);
+        }
+    }
+
+    /**
+     * Print the simulated cache misses per seed of detection from the
+     * seeds of ReorderBench, in every order.
+     */
+    static void printCacheMisses(String graph, double tolerance) throws IOException {
+        File f = new File("src/test/resources/" + graph);
+        List<Vertex> seeds = new CsrGraph().loadFrom(f).selectSeeds(4);
+        System.out.printf("%-8s %14s %14s%n", "order", "reads/seed", "misses/seed");
+        for (VertexOrder order : VertexOrder.values()) {
+            TracedGraph g = new TracedGraph();
+            g.loadFrom(f, order);
+            g.trace();
+            for (Vertex s : seeds) {
+                g.communityDetectionPpr(g.vertex(g.relabeledIndex(s.index())),
+                        0.99, tolerance);
+            }
+            System.out.printf("%-8s %14.0f %14.0f%n", order,
+                    (double) g.reads / seeds.size(), (double) g.misses / seeds.size());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        printCacheMisses("hep-th.graph", 1e-4);
+        Options opt = new OptionsBuilder()
+                .include(ReorderBench.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .addProfiler(LinuxPerfNormProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result(ReorderBench.class.getName() + ".csv")
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -1,7 +1,9 @@
 import org.docopt.Docopt;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.*;
@@ -15,7 +17,7 @@ import static java.util.stream.Collectors.*;
 public class Pprcd {
 
     public static void main(String[] args) throws IOException {
-        args = new String[]{
+        if (args.length == 0) args = new String[]{
                 "src/test/resources/pprcd.py.graph",
                 "-s", "1,10",
                 "--stats"
@@ -25,26 +27,82 @@ public class Pprcd {
                 .withVersion("pprcd 0.1").parse(args);
 
         final String FILE = (String) opts.get("FILE");
-        Graph g = new BitSetGraph().loadFrom(
-                new File(FILE));
+        if ((Boolean) opts.get("convert")) {
+            Graph g = new CsrGraph().loadFrom(new File(FILE));
+            GraphSnapshot.write(g, new File((String) opts.get("SNAPSHOT")),
+                    (Boolean) opts.get("--bitmaps"));
+            return;
+        }
+        Metrics metrics = (Boolean) opts.get("--metrics")
+                ? new Metrics().register("pprcd") : null;
+        long start = System.nanoTime();
+        VertexOrder order = VertexOrder.valueOf(
+                ((String) opts.get("--reorder")).toUpperCase());
+        Graph g = GraphSnapshot.isSnapshot(new File(FILE)) && order == VertexOrder.NONE
+                ? GraphSnapshot.open(new File(FILE))
+                : new BitSetGraph().loadFrom(new File(FILE), order);
+        g.setMetrics(metrics);
+        g.setPushOrder(PushOrder.valueOf(((String) opts.get("--push-order"))
+                .toUpperCase().replace('-', '_')));
+        start = phase(metrics, Metrics.Phase.LOAD, start);
 
-        List<Vertex> seeds = Arrays.stream(((String) opts.get("-s")).split(","))
-                .map(Integer::valueOf)
-                .map(g::vertex)
-                .collect(toList());
+        List<Vertex> seeds = opts.get("-s") == null
+                ? g.selectSeeds(Integer.valueOf((String) opts.get("-d")))
+                : Arrays.stream(((String) opts.get("-s")).split(","))
+                        .map(Integer::valueOf)
+                        .map(g::relabeledIndex)
+                        .map(g::vertex)
+                        .collect(toList());
+        start = phase(metrics, Metrics.Phase.SEEDS, start);
 
-        Partition communities = g.communityDetectionPpr(
-                seeds,
-                Double.valueOf((String) opts.get("-a")),
-                Double.valueOf((String) opts.get("-t")));
+        SweepLimit limit = null;
+        if (opts.get("--max-size") != null || opts.get("--plateau") != null) {
+            limit = new SweepLimit(
+                    opts.get("--max-size") == null ? 0
+                            : Integer.valueOf((String) opts.get("--max-size")),
+                    opts.get("--plateau") == null ? 0
+                            : Integer.valueOf((String) opts.get("--plateau")));
+        }
 
-        communities.forEach( c -> {
-            String members = c.stream()
-                    .map(Vertex::index)
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(" "));
-            System.out.println(members);
-        });
+        // communities are only kept when the statistics need them
+        Partition communities = new Partition();
+        boolean stats = (Boolean) opts.get("--stats");
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out), 1 << 16));
+        double alpha = Double.valueOf((String) opts.get("-a"));
+        double tolerance = Double.valueOf((String) opts.get("-t"));
+        if (opts.get("--cover") != null) {
+            CoverageDetection detection = new CoverageDetection(g,
+                    new DetectionScheduler(g).limit(limit))
+                    .skipCovered(Double.valueOf((String) opts.get("--skip-covered")))
+                    .target(Double.valueOf((String) opts.get("--cover")));
+            for (Block c : detection.run(seeds, alpha, tolerance)) {
+                write(out, g, order, c);
+                if (stats) communities.add(c);
+            }
+            System.err.printf("detected from %d of %d seeds, coverage %.4f%n",
+                    detection.runs(), seeds.size(), detection.coverage());
+        } else {
+            try (CommunityStream stream = g.communityStream(
+                    seeds,
+                    alpha,
+                    tolerance,
+                    limit,
+                    4 * Runtime.getRuntime().availableProcessors(),
+                    stats || (Boolean) opts.get("--ordered"))) {
+                while (stream.hasNext()) {
+                    Block c = stream.next();
+                    write(out, g, order, c);
+                    if (stats) communities.add(c);
+                }
+            }
+        }
+        out.flush();
+        start = phase(metrics, Metrics.Phase.DETECTION, start);
+        if (limit != null) {
+            System.err.printf("sweep examined %d of %d candidates%n",
+                    limit.examined(), limit.candidates());
+        }
 
         if ((Boolean) opts.get("--stats")) {
             PrintWriter matrixWriter = new PrintWriter(
@@ -65,10 +123,50 @@ public class Pprcd {
             sizeWriter.println();
             matrixWriter.close();
             sizeWriter.close();
+            start = phase(metrics, Metrics.Phase.JOIN, start);
+
+            PrintWriter qualityWriter = new PrintWriter(
+                    FILE + "-block-quality.csv", "UTF-8");
+            qualityWriter.println("size,volume,cut,conductance,normalized_cut,modularity");
+            for (Quality.Score q : new Quality(g).score(communities)) {
+                qualityWriter.println(q.size() + "," + q.volume() + "," + q.cut()
+                        + "," + q.conductance() + "," + q.normalizedCut()
+                        + "," + q.modularity());
+            }
+            qualityWriter.close();
+            phase(metrics, Metrics.Phase.QUALITY, start);
             // TODO write out overlap
 
         }
+        if (metrics != null) {
+            metrics.write(new File(FILE + "-metrics.csv"));
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Write the members of c as indices of the file, on one line.
+     */
+    private static void write(PrintWriter out, Graph g, VertexOrder order, Block c) {
+        int[] members = c.indices();
+        for (int i = 0; i < members.length; i++) {
+            members[i] = g.originalIndex(members[i]);
+        }
+        if (order != VertexOrder.NONE) Arrays.sort(members);
+        for (int i = 0; i < members.length; i++) {
+            if (i > 0) out.print(' ');
+            out.print(members[i]);
+        }
+        out.println();
+    }
 
+    /**
+     * Add the time since start to phase and return the current time.
+     */
+    private static long phase(Metrics metrics, Metrics.Phase phase, long start) {
+        long now = System.nanoTime();
+        if (metrics != null) metrics.add(phase, now - start);
+        return now;
     }
 }
 
@@ -0,0 +1,49 @@
+package util.graph;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size bit set that can be updated by several threads at once.
+ */
+public final class AtomicBitSet {
+
+    private final AtomicLongArray words;
+    private final int size;
+
+    public AtomicBitSet(int size) {
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean get(int i) {
+        return (words.get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * Set bit i.
+     *
+     * @return true if this call changed the bit, false if it was already set
+     */
+    public boolean set(int i) {
+        int w = i >>> 6;
+        long mask = 1L << i;
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & mask) != 0) return false;
+        } while (!words.compareAndSet(w, word, word | mask));
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (int w = 0; w < words.length(); w++) {
+            count += Long.bitCount(words.get(w));
+        }
+        return count;
+    }
+}
@@ -7,15 +7,19 @@ import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
 
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 
 public class BitSetGraph extends Graph {
 
     Map<Vertex, RoaringBitmap> vertices = new HashMap<>();
+    /** One more than the highest index added. */
+    private int bound;
 
     @Override
     public void addEdge(Integer source, Integer target) {
+        bound = Math.max(bound, Math.max(source, target) + 1);
         RoaringBitmap
                 s = vertices.getOrDefault(vertex(source), new RoaringBitmap()),
                 t = vertices.getOrDefault(vertex(target), new RoaringBitmap());
@@ -23,6 +27,31 @@ public class BitSetGraph extends Graph {
         t.add(source);
         vertices.put(vertex(source), s);
         vertices.put(vertex(target), t);
+        modified();
+    }
+
+    /**
+     * Create one bitmap per vertex directly from its sorted row, when the
+     * graph is still empty.
+     */
+    @Override
+    void load(int[] offsets, int[] neighbors) {
+        if (!vertices.isEmpty()) {
+            super.load(offsets, neighbors);
+            return;
+        }
+        int n = offsets.length - 1;
+        RoaringBitmap[] rows = new RoaringBitmap[n];
+        IntStream.range(0, n).parallel()
+                .filter(v -> offsets[v + 1] > offsets[v])
+                .forEach(v -> rows[v] = RoaringBitmap.bitmapOf(
+                        Arrays.copyOfRange(neighbors, offsets[v], offsets[v + 1])));
+        vertices = new HashMap<>((int) (n / .75f) + 1);
+        bound = n;
+        for (int v = 0; v < n; v++) {
+            if (rows[v] != null) vertices.put(vertex(v), rows[v]);
+        }
+        modified();
     }
 
     @Override
@@ -30,11 +59,45 @@ public class BitSetGraph extends Graph {
         return vertices.get(vertex).getCardinality();
     }
 
+    @Override
+    public int degreeOf(int v) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        return neighbors == null ? 0 : neighbors.getCardinality();
+    }
+
+    @Override
+    public void forEachNeighbor(int v, java.util.function.IntConsumer action) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        if (neighbors != null) neighbors.forEach((IntConsumer) action::accept);
+    }
+
+    @Override
+    public int[] neighborArray(int v) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        return neighbors == null ? new int[0] : neighbors.toArray();
+    }
+
+    @Override
+    int neighborsIn(int v, RoaringBitmap set) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        return neighbors == null ? 0 : RoaringBitmap.andCardinality(neighbors, set);
+    }
+
+    @Override
+    boolean hasLoop(int v) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        return neighbors != null && neighbors.contains(v);
+    }
+
+    @Override
+    void orNeighbors(int v, RoaringBitmap set) {
+        RoaringBitmap neighbors = vertices.get(vertex(v));
+        if (neighbors != null) set.or(neighbors);
+    }
+
     @Override
     public Stream<Vertex> neighborsOf(Vertex v) {
-        Iterator<Integer> iter = vertices.get(v).iterator();
-        return Stream2.generate(iter::next, iter::hasNext).map(i -> new
-                Vertex(i, this));
+        return Arrays.stream(vertices.get(v).toArray()).mapToObj(this::vertex);
     }
 
     @Override
@@ -59,64 +122,17 @@ public class BitSetGraph extends Graph {
 
     @Override
     public Vertex vertex(Integer v) {
-        return new Vertex(v, this);
-    }
-
-    @Override
-    public Join join(Partition partition) {
-        Set<Overlap> overlaps = new HashSet<>();
-        Map<Vertex, Integer> vertexSize = new HashMap<>(partition.size());
-        Map<Edge, Integer> edgeSize = new HashMap<>(partition.size()
-                *(partition.size()-1)/2);
-        Graph joined = new BitSetGraph();
-        // row major diagonal
-        for (int i = 0; i < partition.size(); i++) {
-            Block source = partition.get(i);
-            vertexSize.put(joined.vertex(i), source.size());
-            // using list to calculate number of edges between blocks
-            List<Vertex> cut = source.parallelStream().flatMap
-                    (Vertex::neighbors).collect(Collectors.toList());
-            for (int j = i; j < partition.size(); j++) {
-                Block target = partition.get(j);
-                if (i != j) {
-                    int overlap = (int) source.stream()
-                            .filter(target::contains).count();
-                    if (overlap > 0)
-                        overlaps.add(new Overlap(joined.vertex(i),
-                                joined.vertex(j), overlap));
-                }
-                int sourceTargetDegree = (int) cut.stream()
-                        .filter(target::contains)
-                        .count();
-                if (sourceTargetDegree > 0) {
-                    joined.addEdge(i, j);
-                    // divide by two because undirected
-                    edgeSize.put(joined.edge(i, j), sourceTargetDegree / 2);
-                }
-            }
-        }
-        return new Join() {
-            @Override
-            public int size(Vertex v) {
-                return vertexSize.get(v);
-            }
-            @Override
-            public int size(Edge e) {
-                Integer size = edgeSize.get(e);
-                if (size != null) {
-                    return size;
-                }
-                return 0;
-            }
-            @Override
-            public Set<Overlap> overlap() {
-                return overlaps;
-            }
-            @Override
-            public Graph graph() {
-                return joined;
-            }
-        };
+        return vertex(v.intValue());
+    }
+
+    @Override
+    public int indexBound() {
+        return bound;
+    }
+
+    @Override
+    protected int vertexCacheBound() {
+        return bound;
     }
 
     @Override
@@ -129,29 +145,11 @@ public class BitSetGraph extends Graph {
         return new Edge(vertex(source), vertex(target));
     }
 
+    /**
+     * Breadth first seed selection in O(V + E), see {@link SeedSelector}.
+     */
     @Override
     public List<Vertex> selectSeeds(int distance) {
-        if (distance < 1) throw new IllegalArgumentException("expected " +
-                "integer with higher value than 0");
-        List<Vertex> seeds = new ArrayList<>();
-        RoaringBitmap visited = new RoaringBitmap();
-        while (visited.getCardinality() < numVertices()) {
-            Integer unvisitedVertex = vertices().stream()
-                    .map(Vertex::index)
-                    .filter( i -> !visited.contains(i) )
-                    .findFirst().get();
-            seeds.add(vertex(unvisitedVertex));
-            RoaringBitmap visitor = new RoaringBitmap();
-            visitor.add(unvisitedVertex);
-            for (int d = distance; d > 0; d--) {
-                // TODO: is xor approach is better? following loop
-                // would be smaller.
-                visitor.forEach((IntConsumer) v -> {
-                    visitor.or(vertices.get(vertex(v)));
-                } );
-            }
-            visited.or(visitor);
-        }
-        return seeds;
+        return new SeedSelector(this).select(distance);
     }
 }
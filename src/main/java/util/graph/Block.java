@@ -1,19 +1,175 @@
 package util.graph;
 
-import java.util.HashSet;
-import java.util.Set;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntConsumer;
 
 /**
+ * Set of vertices of one graph, stored as a {@link RoaringBitmap} of
+ * vertex indices. Vertices are created on demand when the block is
+ * iterated, in ascending index order.
+ * <p>
  * Created by joelmo on 19/04/16.
  */
-public class Block extends HashSet<Vertex> {
+public class Block extends AbstractSet<Vertex> {
+
+    private final RoaringBitmap members;
+    private Graph host;
 
     public Block() {
-        super();
+        this(null, new RoaringBitmap());
     }
 
     public Block(Block b) {
-        super(b);
+        this(b.host, b.members.clone());
+    }
+
+    Block(Graph host) {
+        this(host, new RoaringBitmap());
+    }
+
+    Block(Graph host, RoaringBitmap members) {
+        this.host = host;
+        this.members = members;
+    }
+
+    /**
+     * Members as vertex indices. Changes to the bitmap change the block.
+     */
+    RoaringBitmap bitmap() {
+        return members;
+    }
+
+    @Override
+    public boolean add(Vertex v) {
+        if (host == null) host = v.graph();
+        return members.checkedAdd(v.index());
+    }
+
+    /**
+     * Add the vertex with index v, of the graph of this block.
+     *
+     * @throws IllegalStateException if the block was created without a
+     *                               graph and no vertex has been added yet
+     */
+    public boolean add(int v) {
+        if (host == null) throw new IllegalStateException(
+                "block has no graph, add a vertex first");
+        return members.checkedAdd(v);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Vertex && members.contains(((Vertex) o).index());
+    }
+
+    public boolean contains(int v) {
+        return members.contains(v);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Vertex && members.checkedRemove(((Vertex) o).index());
+    }
+
+    @Override
+    public void clear() {
+        members.clear();
+    }
+
+    @Override
+    public int size() {
+        return members.getCardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Apply action to every member index, in ascending order.
+     */
+    public void forEachIndex(IntConsumer action) {
+        members.forEach((org.roaringbitmap.IntConsumer) action::accept);
+    }
+
+    /**
+     * Member indices in ascending order.
+     */
+    public int[] indices() {
+        return members.toArray();
+    }
+
+    public int intersectionSize(Block other) {
+        return RoaringBitmap.andCardinality(members, other.members);
+    }
+
+    public Block union(Block other) {
+        return new Block(host != null ? host : other.host,
+                RoaringBitmap.or(members, other.members));
     }
 
+    public Block intersection(Block other) {
+        return new Block(host != null ? host : other.host,
+                RoaringBitmap.and(members, other.members));
+    }
+
+    public Block difference(Block other) {
+        return new Block(host, RoaringBitmap.andNot(members, other.members));
+    }
+
+    /**
+     * Iterates over a copy of the member indices, so the block can be
+     * modified while iterating.
+     */
+    @Override
+    public Iterator<Vertex> iterator() {
+        int[] indices = members.toArray();
+        return new Iterator<Vertex>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < indices.length;
+            }
+
+            @Override
+            public Vertex next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return host.vertex(indices[next++]);
+            }
+
+            @Override
+            public void remove() {
+                if (next == 0) throw new IllegalStateException();
+                members.remove(indices[next - 1]);
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof Block) return members.equals(((Block) o).members);
+        return super.equals(o);
+    }
+
+    /**
+     * Sum of the member indices, like any set of vertices.
+     */
+    @Override
+    public int hashCode() {
+        int[] sum = {0};
+        members.forEach((org.roaringbitmap.IntConsumer) v -> sum[0] += v);
+        return sum[0];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(members.toArray());
+    }
 }
@@ -0,0 +1,164 @@
+package util.graph;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Join of the blocks of a partition.
+ * <p>
+ * An inverted index from vertex to the blocks containing it is built
+ * first. Then every block is processed in parallel: following the edges of
+ * its vertices through the index gives the number of edges to every other
+ * block, and the index of its own vertices gives the overlaps. Counts are
+ * kept in upper triangular sparse matrices, so time and memory grow with
+ * the edges and memberships instead of with the square of the number of
+ * blocks.
+ */
+final class BlockJoin implements Join {
+
+    private final int[] sizes;
+    /** Ordered pairs (v, u) of adjacent vertices with v in i, u in j. */
+    private final SparseIntMatrix edges;
+    /** Vertices in both i and j, for i < j. */
+    private final SparseIntMatrix overlaps;
+    private final Graph joined = new BitSetGraph();
+    private Set<Overlap> overlap;
+
+    BlockJoin(Graph g, Partition partition) {
+        int k = partition.size();
+        int[][] blocks = new int[k][];
+        int bound = g.indexBound();
+        sizes = new int[k];
+        for (int i = 0; i < k; i++) {
+            blocks[i] = partition.get(i).indices();
+            sizes[i] = blocks[i].length;
+            for (int v : blocks[i]) bound = Math.max(bound, v + 1);
+        }
+        // blocks containing v are memberOf[offsets[v]] .. in ascending order
+        int[] offsets = new int[bound + 1];
+        for (int[] block : blocks) {
+            for (int v : block) offsets[v + 1]++;
+        }
+        for (int v = 0; v < bound; v++) offsets[v + 1] += offsets[v];
+        int[] memberOf = new int[offsets[bound]];
+        int[] fill = Arrays.copyOf(offsets, bound);
+        for (int i = 0; i < k; i++) {
+            for (int v : blocks[i]) memberOf[fill[v]++] = i;
+        }
+
+        edges = new SparseIntMatrix(k);
+        overlaps = new SparseIntMatrix(k);
+        ThreadLocal<Row> rows = ThreadLocal.withInitial(() -> new Row(k));
+        IntStream.range(0, k).parallel().forEach(a -> {
+            Row row = rows.get();
+            for (int v : blocks[a]) {
+                g.forEachNeighbor(v, u -> {
+                    for (int m = offsets[u]; m < offsets[u + 1]; m++) {
+                        if (memberOf[m] >= a) row.add(memberOf[m]);
+                    }
+                });
+            }
+            row.emit(a, edges);
+            for (int v : blocks[a]) {
+                for (int m = offsets[v]; m < offsets[v + 1]; m++) {
+                    if (memberOf[m] > a) row.add(memberOf[m]);
+                }
+            }
+            row.emit(a, overlaps);
+        });
+        buildGraph(k);
+    }
+
+    /**
+     * Add an edge between every pair of blocks with edges between them,
+     * including loops for blocks with internal edges.
+     */
+    private void buildGraph(int k) {
+        int[] offsets = new int[k + 1];
+        for (int i = 0; i < k; i++) {
+            for (int n = 0; n < edges.nonZeros(i); n++) {
+                int j = edges.column(i, n);
+                offsets[i + 1]++;
+                if (j != i) offsets[j + 1]++;
+            }
+        }
+        for (int i = 0; i < k; i++) offsets[i + 1] += offsets[i];
+        int[] neighbors = new int[offsets[k]];
+        int[] fill = Arrays.copyOf(offsets, k);
+        // rows are visited in ascending order, so every row stays sorted
+        for (int i = 0; i < k; i++) {
+            for (int n = 0; n < edges.nonZeros(i); n++) {
+                int j = edges.column(i, n);
+                neighbors[fill[i]++] = j;
+                if (j != i) neighbors[fill[j]++] = i;
+            }
+        }
+        joined.load(offsets, neighbors);
+    }
+
+    @Override
+    public int size(Vertex v) {
+        return sizes[v.index()];
+    }
+
+    @Override
+    public int size(Edge e) {
+        int i = Math.min(e.source().index(), e.target().index()),
+                j = Math.max(e.source().index(), e.target().index());
+        int pairs = edges.get(i, j);
+        // internal edges are seen from both endpoints
+        return i == j ? pairs / 2 : pairs;
+    }
+
+    @Override
+    public synchronized Set<Overlap> overlap() {
+        if (overlap == null) {
+            overlap = new HashSet<>();
+            for (int i = 0; i < overlaps.rows(); i++) {
+                for (int n = 0; n < overlaps.nonZeros(i); n++) {
+                    overlap.add(new Overlap(joined.vertex(i),
+                            joined.vertex(overlaps.column(i, n)),
+                            overlaps.value(i, n)));
+                }
+            }
+        }
+        return overlap;
+    }
+
+    @Override
+    public Graph graph() {
+        return joined;
+    }
+
+    /**
+     * Dense counters for one row, reset after each row in time proportional
+     * to the number of non-zero columns.
+     */
+    private static final class Row {
+
+        private final int[] counts;
+        private final IntQueue touched = new IntQueue();
+
+        Row(int columns) {
+            counts = new int[columns];
+        }
+
+        void add(int column) {
+            if (counts[column]++ == 0) touched.add(column);
+        }
+
+        void emit(int row, SparseIntMatrix matrix) {
+            int[] columns = new int[touched.size()];
+            for (int n = 0; n < columns.length; n++) columns[n] = touched.remove();
+            Arrays.sort(columns);
+            int[] values = new int[columns.length];
+            for (int n = 0; n < columns.length; n++) {
+                values[n] = counts[columns[n]];
+                counts[columns[n]] = 0;
+            }
+            matrix.setRow(row, columns, values);
+        }
+    }
+}
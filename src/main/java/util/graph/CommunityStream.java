@@ -0,0 +1,157 @@
+package util.graph;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Communities of a list of seeds, detected in parallel and returned as they
+ * complete.
+ * <p>
+ * Seeds are submitted to the common fork/join pool in order, but at most
+ * inFlight of them are running or waiting to be consumed at any time: the
+ * next seed is only submitted once a community has been returned by {@link
+ * #next()}. Memory is therefore bounded by inFlight communities, however
+ * many seeds there are. When ordered, communities are returned in seed
+ * order, otherwise in order of completion.
+ */
+public final class CommunityStream implements Iterator<Block>, AutoCloseable {
+
+    private static final class Result {
+        final int seed;
+        final Block block;
+        final Throwable error;
+
+        Result(int seed, Block block, Throwable error) {
+            this.seed = seed;
+            this.block = block;
+            this.error = error;
+        }
+    }
+
+    private final int numSeeds;
+    private final boolean ordered;
+    private final Semaphore permits;
+    private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+    private final Map<Integer, Result> pending = new HashMap<>();
+    private final Thread submitter;
+    private volatile boolean closed;
+    private int returned, seed = -1;
+
+    public CommunityStream(Graph g, List<Vertex> seeds, double alpha,
+                           double tolerance, int inFlight, boolean ordered) {
+        this(g, seeds, alpha, tolerance, null, inFlight, ordered);
+    }
+
+    /**
+     * Stream whose sweeps stop early according to limit, or examine every
+     * candidate if limit is null.
+     */
+    public CommunityStream(Graph g, List<Vertex> seeds, double alpha,
+                           double tolerance, SweepLimit limit, int inFlight,
+                           boolean ordered) {
+        if (inFlight < 1) throw new IllegalArgumentException("expected " +
+                "integer with higher value than 0");
+        this.numSeeds = seeds.size();
+        this.ordered = ordered;
+        this.permits = new Semaphore(inFlight);
+        submitter = new Thread(() -> {
+            try {
+                for (int i = 0; i < numSeeds && !closed; i++) {
+                    permits.acquire();
+                    int index = i;
+                    try {
+                        Vertex s = seeds.get(i);
+                        ForkJoinPool.commonPool().execute(() -> {
+                            Block block = null;
+                            Throwable error = null;
+                            try {
+                                block = g.communityDetectionPpr(s, alpha,
+                                        tolerance, limit);
+                            } catch (Throwable e) {
+                                error = e;
+                            } finally {
+                                completed.add(new Result(index, block, error));
+                            }
+                        });
+                    } catch (Throwable e) {
+                        // every permit taken is handed back by next()
+                        completed.add(new Result(index, null, e));
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }, "community-stream");
+        submitter.setDaemon(true);
+        submitter.start();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return returned < numSeeds && !closed;
+    }
+
+    /**
+     * Wait for the next community. An exception or error thrown while
+     * detecting it is rethrown here, and closes the stream.
+     */
+    @Override
+    public Block next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Result r;
+        try {
+            if (ordered) {
+                while ((r = pending.remove(returned)) == null) {
+                    Result c = completed.take();
+                    pending.put(c.seed, c);
+                }
+            } else {
+                r = completed.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("interrupted while waiting for " +
+                    "a community", e);
+        }
+        returned++;
+        try {
+            if (r.error != null) {
+                close();
+                if (r.error instanceof RuntimeException) throw (RuntimeException) r.error;
+                if (r.error instanceof Error) throw (Error) r.error;
+                throw new IllegalStateException("community detection failed",
+                        r.error);
+            }
+        } finally {
+            permits.release();
+        }
+        seed = r.seed;
+        return r.block;
+    }
+
+    /**
+     * Position in the seed list of the seed of the last community returned.
+     */
+    public int seedIndex() {
+        return seed;
+    }
+
+    /**
+     * Stop submitting seeds. Seeds already running complete in the
+     * background and their communities are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        submitter.interrupt();
+    }
+}
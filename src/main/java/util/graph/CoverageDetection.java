@@ -0,0 +1,149 @@
+package util.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Whole graph community detection that only runs the seeds it still needs.
+ * <p>
+ * Many seeds returned by {@link Graph#selectSeeds(int)} fall inside a
+ * community that another seed has already found, and detecting from them
+ * mostly finds it again. The vertices of every community found are marked
+ * in a concurrent coverage bitmap. When its turn comes, a seed is skipped
+ * if at least skipCovered of its closed neighborhood is already covered.
+ * If the covered fraction of the graph has not reached target after all
+ * seeds had their turn, the skipped seeds that are not covered themselves
+ * get a second one. Once target is reached every remaining seed is
+ * skipped. Seeds run most expensive first with a {@link
+ * DetectionScheduler}, so the large communities that cover most of the
+ * graph are found early. Seeds running at the same time do not see each
+ * other's communities, so the partition depends a little on scheduling.
+ */
+public final class CoverageDetection {
+
+    /** Default fraction of the neighborhood of a seed that skips it. */
+    public static final double SKIP_COVERED = 0.5;
+
+    private final Graph graph;
+    private final DetectionScheduler scheduler;
+    private double skipCovered = SKIP_COVERED, target = 1;
+    private AtomicBitSet covered = new AtomicBitSet(0);
+    private final AtomicInteger numCovered = new AtomicInteger();
+    private final LongAdder runs = new LongAdder();
+    private long skipped;
+
+    /**
+     * Detection on the common pool.
+     */
+    public CoverageDetection(Graph graph) {
+        this(graph, new DetectionScheduler(graph));
+    }
+
+    public CoverageDetection(Graph graph, DetectionScheduler scheduler) {
+        this.graph = graph;
+        this.scheduler = Objects.requireNonNull(scheduler);
+    }
+
+    /**
+     * Skip a seed when at least fraction of the seed and its neighbors is
+     * covered, 1 only skips fully covered neighborhoods.
+     */
+    public CoverageDetection skipCovered(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) throw new IllegalArgumentException(
+                "expected fraction in (0, 1]");
+        this.skipCovered = fraction;
+        return this;
+    }
+
+    /**
+     * Stop detecting once at least fraction of the vertices is covered.
+     */
+    public CoverageDetection target(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) throw new IllegalArgumentException(
+                "expected fraction in (0, 1]");
+        this.target = fraction;
+        return this;
+    }
+
+    /**
+     * Communities of the seeds that were run, in the order of seeds. The
+     * coverage starts empty on every call.
+     */
+    public Partition run(List<Vertex> seeds, double alpha, double tolerance) {
+        covered = new AtomicBitSet(graph.indexBound());
+        numCovered.set(0);
+        runs.reset();
+        int goal = (int) Math.ceil(target * graph.numVertices());
+        Block[] blocks = new Block[seeds.size()];
+        ObjIntConsumer<Block> cover = (block, s) -> {
+            blocks[s] = block;
+            block.forEachIndex(v -> {
+                if (covered.set(v)) numCovered.incrementAndGet();
+            });
+        };
+        // seeds in well covered neighborhoods wait for a second pass
+        AtomicBitSet deferred = new AtomicBitSet(seeds.size());
+        scheduler.run(seeds, alpha, tolerance, s -> {
+            if (numCovered.get() >= goal) return true;
+            if (isCovered(seeds.get(s).index())) return deferred.set(s);
+            runs.increment();
+            return false;
+        }, cover);
+        List<Vertex> rest = new ArrayList<>();
+        int[] position = new int[deferred.cardinality()];
+        for (int s = 0; s < seeds.size(); s++) {
+            if (deferred.get(s)) {
+                position[rest.size()] = s;
+                rest.add(seeds.get(s));
+            }
+        }
+        if (numCovered.get() < goal && !rest.isEmpty()) {
+            // the second pass runs the seeds that are not covered themselves
+            scheduler.run(rest, alpha, tolerance, i -> {
+                if (numCovered.get() >= goal || covered.get(rest.get(i).index())) {
+                    return true;
+                }
+                runs.increment();
+                return false;
+            }, (block, i) -> cover.accept(block, position[i]));
+        }
+        skipped = seeds.size() - runs.sum();
+        Partition partition = new Partition();
+        Arrays.stream(blocks).filter(Objects::nonNull).forEach(partition::add);
+        return partition;
+    }
+
+    private boolean isCovered(int seed) {
+        int[] count = {covered.get(seed) ? 1 : 0};
+        graph.forEachNeighbor(seed, u -> {
+            if (covered.get(u)) count[0]++;
+        });
+        return count[0] >= skipCovered * (graph.degreeOf(seed) + 1);
+    }
+
+    /**
+     * Seeds detected from by the last run.
+     */
+    public long runs() {
+        return runs.sum();
+    }
+
+    /**
+     * Seeds skipped by the last run.
+     */
+    public long skipped() {
+        return skipped;
+    }
+
+    /**
+     * Fraction of the vertices in a community found by the last run.
+     */
+    public double coverage() {
+        return (double) numCovered.get() / graph.numVertices();
+    }
+}
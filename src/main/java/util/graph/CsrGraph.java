@@ -0,0 +1,197 @@
+package util.graph;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Immutable undirected graph in compressed sparse row (CSR) format.
+ * <p>
+ * Edges added with {@link #addEdge(Integer, Integer)} are buffered until
+ * the graph is first queried (or {@link #optimize()} is called), then the
+ * adjacency is frozen into two packed arrays: the neighbors of vertex
+ * {@code v} are {@code neighbors[offsets[v]] .. neighbors[offsets[v+1]-1]},
+ * sorted ascending and without duplicates. Adding edges to a frozen graph
+ * is not supported.
+ */
+public class CsrGraph extends Graph {
+
+    private int[] pending = new int[16];
+    private int numPending;
+    private int maxIndex = -1;
+
+    private volatile boolean frozen;
+    private int[] offsets;
+    private int[] neighbors;
+    private int numVertices;
+
+    @Override
+    public void addEdge(Integer source, Integer target) {
+        if (frozen) throw new IllegalStateException("graph is frozen");
+        if (source < 0 || target < 0) throw new IllegalArgumentException(
+                "expected non-negative vertex index");
+        if (numPending + 2 > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[numPending++] = source;
+        pending[numPending++] = target;
+        maxIndex = Math.max(maxIndex, Math.max(source, target));
+    }
+
+    /**
+     * Build offsets and neighbor arrays from the pending edge list, using a
+     * counting sort on the source vertex followed by a per vertex sort and
+     * duplicate removal.
+     */
+    private synchronized void freeze() {
+        if (frozen) return;
+        int n = maxIndex + 1;
+        int[] off = new int[n + 1];
+        for (int i = 0; i < numPending; i += 2) {
+            off[pending[i] + 1]++;
+            if (pending[i] != pending[i + 1]) off[pending[i + 1] + 1]++;
+        }
+        for (int v = 0; v < n; v++) off[v + 1] += off[v];
+        int[] adj = new int[off[n]];
+        int[] cursor = Arrays.copyOf(off, n);
+        for (int i = 0; i < numPending; i += 2) {
+            int s = pending[i], t = pending[i + 1];
+            adj[cursor[s]++] = t;
+            if (s != t) adj[cursor[t]++] = s;
+        }
+        // sort each row and compact away parallel edges
+        int w = 0, count = 0;
+        for (int v = 0; v < n; v++) {
+            int from = off[v], to = off[v + 1];
+            Arrays.sort(adj, from, to);
+            off[v] = w;
+            for (int i = from; i < to; i++) {
+                if (i == from || adj[i] != adj[i - 1]) adj[w++] = adj[i];
+            }
+            if (w > off[v]) count++;
+        }
+        off[n] = w;
+        offsets = off;
+        neighbors = w == adj.length ? adj : Arrays.copyOf(adj, w);
+        numVertices = count;
+        pending = null;
+        frozen = true;
+    }
+
+    /**
+     * Adopt the arrays as the frozen adjacency, when no edges have been
+     * added yet.
+     */
+    @Override
+    synchronized void load(int[] offsets, int[] neighbors) {
+        if (frozen || numPending > 0) {
+            super.load(offsets, neighbors);
+            return;
+        }
+        int count = 0;
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            if (offsets[v + 1] > offsets[v]) count++;
+        }
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+        numVertices = count;
+        maxIndex = offsets.length - 2;
+        pending = null;
+        frozen = true;
+    }
+
+    private void ensureFrozen() {
+        if (!frozen) freeze();
+    }
+
+    @Override
+    public int degreeOf(int v) {
+        ensureFrozen();
+        return v >= 0 && v + 1 < offsets.length ? offsets[v + 1] - offsets[v] : 0;
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        if (degreeOf(v) == 0) return;
+        for (int k = offsets[v], end = offsets[v + 1]; k < end; k++) {
+            action.accept(neighbors[k]);
+        }
+    }
+
+    @Override
+    boolean hasLoop(int v) {
+        return degreeOf(v) > 0
+                && Arrays.binarySearch(neighbors, offsets[v], offsets[v + 1], v) >= 0;
+    }
+
+    @Override
+    public int degreeOf(Vertex vertex) {
+        return degreeOf(vertex.index());
+    }
+
+    @Override
+    public int[] neighborArray(int v) {
+        if (degreeOf(v) == 0) return new int[0];
+        return Arrays.copyOfRange(neighbors, offsets[v], offsets[v + 1]);
+    }
+
+    @Override
+    public Stream<Vertex> neighborsOf(Vertex v) {
+        int i = v.index();
+        if (degreeOf(i) == 0) return Stream.empty();
+        return IntStream.range(offsets[i], offsets[i + 1])
+                .mapToObj(k -> vertex(neighbors[k]));
+    }
+
+    @Override
+    public int numEdges() {
+        ensureFrozen();
+        return neighbors.length / 2;
+    }
+
+    @Override
+    public int numVertices() {
+        ensureFrozen();
+        return numVertices;
+    }
+
+    @Override
+    public void optimize() {
+        ensureFrozen();
+    }
+
+    @Override
+    public Vertex vertex(Integer v) {
+        return vertex(v.intValue());
+    }
+
+    /**
+     * Vertices are cached once the graph is frozen, without freezing it.
+     */
+    @Override
+    protected int vertexCacheBound() {
+        return frozen ? offsets.length - 1 : 0;
+    }
+
+    @Override
+    public int indexBound() {
+        ensureFrozen();
+        return offsets.length - 1;
+    }
+
+    @Override
+    public Set<Vertex> vertices() {
+        return indexedVertices();
+    }
+
+    @Override
+    public Edge edge(Integer source, Integer target) {
+        return new Edge(vertex(source), vertex(target));
+    }
+
+    @Override
+    public List<Vertex> selectSeeds(int distance) {
+        return breadthFirstSeeds(distance);
+    }
+}
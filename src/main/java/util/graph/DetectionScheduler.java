@@ -0,0 +1,192 @@
+package util.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Community detection for many seeds on a fork/join pool, most expensive
+ * seeds first.
+ * <p>
+ * The cost of a seed varies by orders of magnitude, and a costly seed that
+ * starts last decides when the whole run ends. Seeds are therefore sorted
+ * by an estimate of their cost, the volume of their closed neighborhood:
+ * the degree of the seed plus the degrees of its neighbors, which is what
+ * the first pushes from the seed read. The sorted seeds are split in half
+ * recursively down to batches of a few seeds; a worker always continues
+ * with the costlier half and leaves the other one to be stolen by idle
+ * workers. Every community is written to its own slot of an array, so the
+ * results are collected without locking, in seed order.
+ */
+public final class DetectionScheduler implements AutoCloseable {
+
+    /** Default number of seeds below which a range is no longer split. */
+    public static final int BATCH = 4;
+
+    private final Graph graph;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private int batch = BATCH;
+    private SweepLimit limit;
+
+    /**
+     * Scheduler on the common pool.
+     */
+    public DetectionScheduler(Graph graph) {
+        this(graph, ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * Scheduler on pool, which is not shut down by {@link #close()}.
+     */
+    public DetectionScheduler(Graph graph, ForkJoinPool pool) {
+        this(graph, pool, false);
+    }
+
+    /**
+     * Scheduler on a pool of its own with the given number of threads,
+     * shut down by {@link #close()}.
+     */
+    public DetectionScheduler(Graph graph, int threads) {
+        this(graph, new ForkJoinPool(threads), true);
+    }
+
+    private DetectionScheduler(Graph graph, ForkJoinPool pool, boolean ownsPool) {
+        this.graph = graph;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+    /**
+     * Number of seeds below which a range of seeds is run by one task.
+     */
+    public DetectionScheduler batch(int batch) {
+        if (batch < 1) throw new IllegalArgumentException("expected " +
+                "integer with higher value than 0");
+        this.batch = batch;
+        return this;
+    }
+
+    /**
+     * Stop sweeps early according to limit, or examine every candidate if
+     * limit is null.
+     */
+    public DetectionScheduler limit(SweepLimit limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Estimated cost of detection from seed v: the volume of v and its
+     * neighbors.
+     */
+    long cost(int v) {
+        long[] volume = {graph.degreeOf(v)};
+        graph.forEachNeighbor(v, u -> volume[0] += graph.degreeOf(u));
+        return volume[0];
+    }
+
+    /**
+     * Positions in seeds, by decreasing estimated cost.
+     */
+    int[] order(List<Vertex> seeds) {
+        int n = seeds.size();
+        long[] keys = pool.submit(() -> IntStream.range(0, n).parallel()
+                .mapToLong(i -> cost(seeds.get(i).index()))
+                .toArray()).join();
+        // sort cost and position packed in one long, costs stay far below 2^32
+        for (int i = 0; i < n; i++) {
+            keys[i] = (Math.min(keys[i], 0xffffffffL) << 32) | (0xffffffffL - i);
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (0xffffffffL - (keys[n - 1 - i] & 0xffffffffL));
+        }
+        return order;
+    }
+
+    /**
+     * Communities of seeds, in the order of seeds.
+     */
+    public Partition run(List<Vertex> seeds, double alpha, double tolerance) {
+        Block[] blocks = new Block[seeds.size()];
+        run(seeds, alpha, tolerance, (block, i) -> blocks[i] = block);
+        Partition partition = new Partition();
+        partition.addAll(Arrays.asList(blocks));
+        return partition;
+    }
+
+    /**
+     * Hand every community to sink as soon as it is found, with the position
+     * of its seed in seeds. sink is called concurrently from worker threads;
+     * everything it did is visible when this method returns.
+     */
+    public void run(List<Vertex> seeds, double alpha, double tolerance,
+                    ObjIntConsumer<Block> sink) {
+        run(seeds, alpha, tolerance, null, sink);
+    }
+
+    /**
+     * Like {@link #run(List, double, double, ObjIntConsumer)}, skipping the
+     * seeds whose position skip accepts when their turn comes.
+     */
+    void run(List<Vertex> seeds, double alpha, double tolerance,
+             IntPredicate skip, ObjIntConsumer<Block> sink) {
+        int[] order = order(seeds);
+        pool.invoke(new Range(seeds, order, 0, order.length, alpha, tolerance,
+                skip, sink));
+    }
+
+    private final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Vertex> seeds;
+        private final int[] order;
+        private final int from, to;
+        private final double alpha, tolerance;
+        private final IntPredicate skip;
+        private final ObjIntConsumer<Block> sink;
+
+        Range(List<Vertex> seeds, int[] order, int from, int to, double alpha,
+              double tolerance, IntPredicate skip, ObjIntConsumer<Block> sink) {
+            this.seeds = seeds;
+            this.order = order;
+            this.from = from;
+            this.to = to;
+            this.alpha = alpha;
+            this.tolerance = tolerance;
+            this.skip = skip;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= batch) {
+                for (int i = from; i < to; i++) {
+                    int s = order[i];
+                    if (skip != null && skip.test(s)) continue;
+                    sink.accept(graph.communityDetectionPpr(seeds.get(s), alpha,
+                            tolerance, limit), s);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            // fork the cheaper half, which thieves take first, and keep the costlier
+            invokeAll(new Range(seeds, order, from, mid, alpha, tolerance, skip, sink),
+                    new Range(seeds, order, mid, to, alpha, tolerance, skip, sink));
+        }
+    }
+
+    /**
+     * Shut down the pool if this scheduler created it.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) pool.shutdown();
+    }
+}
@@ -0,0 +1,178 @@
+package util.graph;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External memory adjacency builder for edge streams that do not fit in
+ * the heap.
+ * <p>
+ * Edges are buffered in both directions as longs, source in the high
+ * bits. A full buffer is sorted, deduplicated and written to a temporary
+ * run file; reading the adjacency merges the runs, so memory stays bounded
+ * by the buffer whatever the number of edges. Runs are deleted on close.
+ */
+final class EdgeSpool implements Closeable {
+
+    /**
+     * Receiver of the adjacency, row by row in ascending vertex order.
+     */
+    interface RowSink {
+        void row(int v, int[] neighbors, int degree) throws IOException;
+    }
+
+    private final long[] buffer;
+    private int size;
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * @param capacity number of directed edges held in memory, at least 2
+     */
+    EdgeSpool(int capacity) {
+        buffer = new long[Math.max(2, capacity & ~1)];
+    }
+
+    /**
+     * Add the undirected edge {u, v}. Self loops are dropped.
+     */
+    void add(int u, int v) throws IOException {
+        if (u == v) return;
+        if (size + 2 > buffer.length) spill();
+        buffer[size++] = ((long) u << 32) | v;
+        buffer[size++] = ((long) v << 32) | u;
+    }
+
+    /**
+     * Number of runs written to disk so far.
+     */
+    int runs() {
+        return runs.size();
+    }
+
+    private int sortUnique() {
+        Arrays.parallelSort(buffer, 0, size);
+        int k = 0;
+        for (int i = 0; i < size; i++) {
+            if (k == 0 || buffer[i] != buffer[k - 1]) buffer[k++] = buffer[i];
+        }
+        return k;
+    }
+
+    private void spill() throws IOException {
+        int k = sortUnique();
+        File run = File.createTempFile("edges", ".run");
+        run.deleteOnExit();
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 1 << 20))) {
+            for (int i = 0; i < k; i++) out.writeLong(buffer[i]);
+        }
+        size = 0;
+    }
+
+    /**
+     * Pass the duplicate free adjacency of every vertex in [0, n) to sink,
+     * including vertices without neighbors. Edges must not be added
+     * afterwards.
+     *
+     * @return number of directed edges, twice the number of undirected ones
+     */
+    long rows(int n, RowSink sink) throws IOException {
+        Rows rows = new Rows(n, sink);
+        if (runs.isEmpty()) {
+            int k = sortUnique();
+            for (int i = 0; i < k; i++) rows.add(buffer[i]);
+            size = 0;
+        } else {
+            if (size > 0) spill();
+            merge(rows);
+        }
+        rows.finish();
+        return rows.entries;
+    }
+
+    private void merge(Rows rows) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(runs.size(),
+                (a, b) -> Long.compare(a.head, b.head));
+        try {
+            for (File f : runs) {
+                Run run = new Run(f);
+                if (run.next()) heap.add(run); else run.in.close();
+            }
+            long last = -1;
+            while (!heap.isEmpty()) {
+                Run run = heap.poll();
+                // runs are unique within, not across each other
+                if (run.head != last) rows.add(run.head);
+                last = run.head;
+                if (run.next()) heap.add(run); else run.in.close();
+            }
+        } finally {
+            for (Run run : heap) run.in.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (File run : runs) run.delete();
+        runs.clear();
+    }
+
+    private static final class Run {
+        final DataInputStream in;
+        final long length;
+        long read, head;
+
+        Run(File f) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(f), 1 << 16));
+            length = f.length() / 8;
+        }
+
+        boolean next() throws IOException {
+            if (read == length) return false;
+            head = in.readLong();
+            read++;
+            return true;
+        }
+    }
+
+    /**
+     * Groups sorted directed edges into rows.
+     */
+    private static final class Rows {
+        final int n;
+        final RowSink sink;
+        int[] neighbors = new int[16];
+        int current, degree;
+        long entries;
+
+        Rows(int n, RowSink sink) {
+            this.n = n;
+            this.sink = sink;
+        }
+
+        void add(long edge) throws IOException {
+            int u = (int) (edge >>> 32), v = (int) edge;
+            if (u >= n || v >= n) throw new IllegalArgumentException(
+                    "edge " + u + " " + v + " outside of " + n + " vertices");
+            while (current < u) {
+                sink.row(current++, neighbors, degree);
+                degree = 0;
+            }
+            if (degree == neighbors.length) neighbors = Arrays.copyOf(neighbors, degree * 2);
+            neighbors[degree++] = v;
+            entries++;
+        }
+
+        void finish() throws IOException {
+            while (current < n) {
+                sink.row(current++, neighbors, degree);
+                degree = 0;
+            }
+        }
+    }
+}
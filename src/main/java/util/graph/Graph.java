@@ -1,5 +1,8 @@
 package util.graph;
 
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -9,7 +12,10 @@ import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.ObjIntConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -18,6 +24,8 @@ import java.util.stream.StreamSupport;
  */
 public abstract class Graph {
 
+    private volatile long volume = -1;
+
     public abstract void addEdge(Integer source, Integer target);
 
     public abstract int degreeOf(Vertex vertex);
@@ -30,9 +38,66 @@ public abstract class Graph {
 
     public abstract void optimize();
 
+    /**
+     * Sum of the degrees of all vertices. Computed once and cached until the
+     * graph is modified.
+     */
+    public long volume() {
+        long vol = volume;
+        if (vol < 0) {
+            volume = vol = IntStream.range(0, indexBound()).parallel()
+                    .mapToLong(this::degreeOf).sum();
+        }
+        return vol;
+    }
+
+    /**
+     * Invalidate cached aggregates, called when edges are added.
+     */
+    protected void modified() {
+        volume = -1;
+    }
+
+    private volatile Vertex[] vertexCache = new Vertex[0];
+    private int[] originalIndex, relabeledIndex;
+    private volatile Metrics metrics;
+    private volatile PushOrder pushOrder = PushOrder.FIFO;
+
     public abstract Vertex vertex(Integer v);
 
-    public abstract Join join(Partition partition);
+    /**
+     * Canonical vertex with index v: the same instance is returned for every
+     * call, so looking up vertices does not allocate once they have been
+     * seen. Safe to call from several threads; at worst a vertex is created
+     * twice. Indices outside [0, {@link #vertexCacheBound()}) are not
+     * cached, so looking up a bogus index does not grow the cache.
+     */
+    public Vertex vertex(int v) {
+        if (v < 0 || v >= vertexCacheBound()) return new Vertex(v, this);
+        Vertex[] cache = vertexCache;
+        if (v >= cache.length) cache = growVertexCache(v);
+        Vertex vertex = cache[v];
+        if (vertex == null) cache[v] = vertex = new Vertex(v, this);
+        return vertex;
+    }
+
+    private synchronized Vertex[] growVertexCache(int v) {
+        Vertex[] cache = vertexCache;
+        if (v >= cache.length) {
+            vertexCache = cache = Arrays.copyOf(cache, (int) Math.min(
+                    vertexCacheBound(), Math.max(v + 1L, 2L * cache.length)));
+        }
+        return cache;
+    }
+
+    /**
+     * Indices below this bound have their vertex cached by {@link
+     * #vertex(int)}, at least {@link #indexBound()} for indices that are
+     * in the graph. Called for every lookup, so it must be cheap.
+     */
+    protected int vertexCacheBound() {
+        return 0;
+    }
 
     public abstract Set<Vertex> vertices();
 
@@ -40,20 +105,158 @@ public abstract class Graph {
 
     public abstract List<Vertex> selectSeeds(int distance) throws IllegalArgumentException;
 
+    /**
+     * Degree of the vertex with index v.
+     */
+    public int degreeOf(int v) {
+        return degreeOf(vertex(v));
+    }
+
+    /**
+     * Apply action to the index of every neighbor of v, in ascending order.
+     */
+    public void forEachNeighbor(int v, IntConsumer action) {
+        neighborsOf(vertex(v)).sequential().forEach(u -> action.accept(u.index()));
+    }
+
+    /**
+     * Neighbors of v in ascending order, as a new array.
+     */
+    public int[] neighborArray(int v) {
+        int[] neighbors = new int[degreeOf(v)];
+        int[] k = {0};
+        forEachNeighbor(v, u -> neighbors[k[0]++] = u);
+        return neighbors;
+    }
+
+    /**
+     * Number of neighbors of v in set.
+     */
+    int neighborsIn(int v, RoaringBitmap set) {
+        int[] count = {0};
+        forEachNeighbor(v, u -> {
+            if (set.contains(u)) count[0]++;
+        });
+        return count[0];
+    }
+
+    /**
+     * True if v is its own neighbor.
+     */
+    boolean hasLoop(int v) {
+        boolean[] loop = {false};
+        forEachNeighbor(v, u -> {
+            if (u == v) loop[0] = true;
+        });
+        return loop[0];
+    }
+
+    /**
+     * Add the neighbors of v to set.
+     */
+    void orNeighbors(int v, RoaringBitmap set) {
+        forEachNeighbor(v, set::add);
+    }
+
+    /**
+     * One more than the highest vertex index.
+     */
+    public int indexBound() {
+        return vertices().stream().mapToInt(Vertex::index).max().orElse(-1) + 1;
+    }
+
+    /**
+     * Read only view of the vertices with at least one neighbor, for graphs
+     * indexed by {@link #indexBound()} and {@link #degreeOf(int)}.
+     */
+    Set<Vertex> indexedVertices() {
+        int bound = indexBound();
+        return new AbstractSet<Vertex>() {
+            @Override
+            public Iterator<Vertex> iterator() {
+                return IntStream.range(0, bound)
+                        .filter(v -> degreeOf(v) > 0)
+                        .mapToObj(Graph.this::vertex)
+                        .iterator();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Vertex && degreeOf(((Vertex) o).index()) > 0;
+            }
+
+            @Override
+            public int size() {
+                return numVertices();
+            }
+        };
+    }
+
+    /**
+     * Seeds picked by lowest unvisited index, see {@link SeedSelector}.
+     */
+    List<Vertex> breadthFirstSeeds(int distance) {
+        return new SeedSelector(this).select(distance);
+    }
+
     public Block communityDetectionPpr(Vertex seed) {
         return communityDetectionPpr(seed, 0.99, 0.01);
     }
 
     /**
-     * Parallel community detection
+     * Parallel community detection on the common pool, most expensive
+     * seeds first, see {@link DetectionScheduler}. Each worker thread
+     * reuses its own push and sweep buffers for all the seeds it
+     * processes. Communities are in seed order.
      */
     public Partition communityDetectionPpr(List<Vertex> seeds, double
             alpha, double tolerance) {
-        return seeds.parallelStream().map(s ->
-                communityDetectionPpr(s, alpha, tolerance))
-                .collect(Partition::new,
-                        Partition::add,
-                        Partition::addAll);
+        return new DetectionScheduler(this).run(seeds, alpha, tolerance);
+    }
+
+    /**
+     * Parallel community detection that skips seeds whose neighborhood
+     * the communities found so far cover, see {@link CoverageDetection}.
+     * Communities are in the order of the seeds that were run.
+     */
+    public Partition communityDetectionPprCovering(List<Vertex> seeds, double alpha,
+                                                   double tolerance, double skipCovered,
+                                                   double target) {
+        return new CoverageDetection(this).skipCovered(skipCovered).target(target)
+                .run(seeds, alpha, tolerance);
+    }
+
+    /**
+     * Parallel community detection that hands every community to sink as
+     * soon as it is found instead of collecting them. sink is called
+     * concurrently from worker threads, with the community and the
+     * position of its seed in seeds.
+     */
+    public void communityDetectionPpr(List<Vertex> seeds, double alpha,
+                                      double tolerance, ObjIntConsumer<Block> sink) {
+        IntStream.range(0, seeds.size()).parallel().forEach(i -> sink.accept(
+                communityDetectionPpr(seeds.get(i), alpha, tolerance), i));
+    }
+
+    /**
+     * Parallel community detection with at most inFlight seeds running or
+     * waiting to be consumed, see {@link CommunityStream}.
+     */
+    public CommunityStream communityStream(List<Vertex> seeds, double alpha,
+                                           double tolerance, int inFlight,
+                                           boolean ordered) {
+        return new CommunityStream(this, seeds, alpha, tolerance, inFlight,
+                ordered);
+    }
+
+    /**
+     * Streaming community detection with sweeps limited by limit.
+     */
+    public CommunityStream communityStream(List<Vertex> seeds, double alpha,
+                                           double tolerance, SweepLimit limit,
+                                           int inFlight, boolean ordered) {
+        return new CommunityStream(this, seeds, alpha, tolerance, limit,
+                inFlight, ordered);
     }
 
     /**
@@ -73,99 +276,215 @@ public abstract class Graph {
      */
     public Block communityDetectionPpr(Vertex seed, double alpha,
                                       double tolerance) {
-        Map<Vertex, Double> x = new HashMap<>();
-        Map<Vertex, Double> r = new HashMap<>();
-        r.put(seed, 1.); // modified
-        Queue<Vertex> queue = new ArrayDeque<>();
-        queue.add(seed);
-        while (!queue.isEmpty()) {
-            Vertex v = queue.remove();
-            double vx = x.getOrDefault(v, 0.) + (1 - alpha) * r.get(v);
-            x.put(v, vx);
-            double mass = alpha * r.get(v) / (2 * v.degree());
-            v.neighbors() // skip loops
-                    .forEach(u -> {
-                        double ur = r.getOrDefault(u, 0.);
-                        double rdegtol = u.degree() * tolerance;
-                        if (ur < rdegtol && (ur + mass) >= rdegtol)
-                            queue.add(u);
-                        r.put(u, ur + mass);
-                    });
-            r.put(v, mass * v.degree());
-            if (r.get(v) >= v.degree() * tolerance)
-                queue.add(v);
-        }
-        // find cluster, first normalize by degree
-        x.forEach((k, v) -> x.put(k, v / k.degree()));
-        // sort by values in x, decreasing
-        List<Vertex> sv = x.keySet().stream().sorted((o1, o2) -> x.get(o2)
-                .compareTo(x.get(o1))).collect(Collectors.toList());
-        Block S = new Block();
-        double bestcond = 1.;
-        int volS = 0;
-        int cutS = 0;
-        int numEdges = numEdges();
-        Block bestBlock = new Block();
-        bestBlock.add(sv.get(0));
-        for (Vertex s : sv) {
-            volS += s.degree(); // add degree to volume
-            cutS += s.neighbors().map(v -> S.contains(v) ? -1 : 1)
-                    .reduce(Integer::sum).get();
-            S.add(s);
-            double cond = ((double) cutS) / (2*volS + cutS);
-            if (cond < bestcond) {
-                bestcond = cond;
-                bestBlock = new Block(S);
+        return communityDetectionPpr(seed, alpha, tolerance, null);
+    }
+
+    /**
+     * Community detection like {@link #communityDetectionPpr(Vertex, double,
+     * double)}, with a sweep that stops early according to limit. With a
+     * null limit every candidate is examined.
+     */
+    public Block communityDetectionPpr(Vertex seed, double alpha,
+                                      double tolerance, SweepLimit limit) {
+        Metrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        PprWorkspace ws = PprWorkspace.acquire(this);
+        try {
+            ws.push.order(pushOrder).run(seed.index(), alpha, tolerance);
+            long swept = m == null ? 0 : System.nanoTime();
+            Block bestBlock = new Block(this);
+            if (limit == null) {
+                // find cluster, sorted by estimate normalized by degree, decreasing
+                int n = ws.rank();
+                int best = ws.sweep.run(ws.order, n);
+                for (int i = 0; i < best; i++) {
+                    bestBlock.add(ws.order[i]);
+                }
+            } else {
+                int n = ws.candidates();
+                int best = ws.sweep.run(ws.order, ws.scores, n, limit);
+                for (int i = 0; i < best; i++) {
+                    bestBlock.add(ws.sweep.vertex(i));
+                }
             }
+            if (m != null) m.seed(ws.push.pushes(), ws.push.touched(),
+                    ws.push.maxQueue(), ws.sweep.length(), start, swept,
+                    System.nanoTime());
+            return bestBlock;
+        } finally {
+            ws.release();
+        }
+    }
+
+    /**
+     * Communities of seed at every one of tolerances, pushing once through
+     * them in decreasing order with a {@link PprState}. Blocks are returned
+     * in the order of tolerances.
+     */
+    public List<Block> communityDetectionPpr(Vertex seed, double alpha,
+                                             double[] tolerances) {
+        Integer[] levels = new Integer[tolerances.length];
+        for (int i = 0; i < levels.length; i++) levels[i] = i;
+        Arrays.sort(levels, (a, b) -> Double.compare(tolerances[b], tolerances[a]));
+        Block[] blocks = new Block[tolerances.length];
+        PprState state = new PprState(this, seed, alpha);
+        for (int i : levels) {
+            blocks[i] = state.refine(tolerances[i]).community();
         }
-        return bestBlock;
+        return Arrays.asList(blocks);
     }
 
     public Graph loadFrom(File f) throws IOException {
         if (f.getName().endsWith(".graph")) {
-            loadMetis(f);
+            loadMetisMapped(f);
+        } else if (GraphSnapshot.isSnapshot(f)) {
+            loadSnapshot(f);
         }
         optimize();
         return this;
     }
 
+    /**
+     * Load f and relabel its vertices in the given order. The indices of
+     * the file remain available through {@link #originalIndex(int)} and
+     * {@link #relabeledIndex(int)}. Communities depend on the order, see
+     * {@link VertexOrder}.
+     */
+    public Graph loadFrom(File f, VertexOrder order) throws IOException {
+        if (order == VertexOrder.NONE) return loadFrom(f);
+        Graph staged = new CsrGraph().loadFrom(f);
+        int[] permutation = order.permutation(staged);
+        int[][] csr = VertexOrder.relabel(staged, permutation);
+        load(csr[0], csr[1]);
+        int[] original = new int[permutation.length];
+        for (int v = 0; v < permutation.length; v++) original[permutation[v]] = v;
+        originalIndex = original;
+        relabeledIndex = permutation;
+        optimize();
+        return this;
+    }
+
+    /**
+     * Collect the counters of community detection on this graph into
+     * metrics, or stop collecting with null.
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Order of the push in single seed community detection, FIFO by
+     * default.
+     */
+    public void setPushOrder(PushOrder order) {
+        this.pushOrder = order;
+    }
+
+    public PushOrder pushOrder() {
+        return pushOrder;
+    }
+
+    /**
+     * Index in the loaded file of the vertex with index v.
+     */
+    public int originalIndex(int v) {
+        int[] original = originalIndex;
+        return original == null || v < 0 || v >= original.length ? v : original[v];
+    }
+
+    /**
+     * Index of the vertex with index v in the loaded file.
+     */
+    public int relabeledIndex(int v) {
+        int[] relabeled = relabeledIndex;
+        return relabeled == null || v < 0 || v >= relabeled.length ? v : relabeled[v];
+    }
+
     public Graph loadMetis(File f) throws IOException {
-        Iterator<Scanner> lineScanner = Files.lines(f.toPath())
-                .filter(s -> !(s.startsWith("%") || s.isEmpty()))
-                .map(Scanner::new)
-                .iterator();
-        {   // process header
-            Scanner s = lineScanner.next();
-            s.nextInt(); // num vertices
-            s.nextInt(); // num edges
-            List<Integer> fmt = Stream2.generate(s::nextInt, () -> s.hasNextInt())
-                    .collect(Collectors.toList());
-            if (fmt.size() > 0 && fmt.get(0) != 0) {
-                throw new IllegalArgumentException("Found unsupported format in " +
-                        "file: " + fmt.get(0));
+        try (BufferedReader reader = Files.newBufferedReader(f.toPath())) {
+            // comments and empty lines before the header are skipped
+            String line = reader.readLine();
+            while (line != null && (line.isEmpty() || line.startsWith("%"))) {
+                line = reader.readLine();
+            }
+            if (line == null) throw new IllegalArgumentException("Missing header in file");
+            Scanner header = new Scanner(line);
+            header.nextInt(); // num vertices
+            header.nextInt(); // num edges
+            if (header.hasNextInt()) {
+                int fmt = header.nextInt();
+                if (fmt != 0) throw new IllegalArgumentException("Found " +
+                        "unsupported format in file: " + fmt);
+            }
+            // every other line is a vertex, an empty one is isolated
+            int v = 0;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("%")) continue;
+                v++;
+                Scanner s = new Scanner(line);
+                while (s.hasNextInt()) addEdge(v, s.nextInt());
             }
-        }
-        int vertexIndex = 1;
-        while (lineScanner.hasNext()) {
-            final Scanner s = lineScanner.next();
-            int v = vertexIndex++;
-            Stream2.generate(s::nextInt, () -> s.hasNextInt()).sequential().forEach(i -> {
-                addEdge(v, i);
-            });
         }
         return this;
     }
 
+    /**
+     * Join the blocks of partition into a graph with one vertex per block,
+     * see {@link BlockJoin}.
+     */
+    public Join join(Partition partition) {
+        return new BlockJoin(this, partition);
+    }
+
+    /**
+     * Read a METIS file like {@link #loadMetis(File)}, but memory map it and
+     * parse line aligned chunks in parallel, then add the adjacency in bulk.
+     */
+    public Graph loadMetisMapped(File f) throws IOException {
+        MetisLoader.load(f, this);
+        return this;
+    }
+
+    /**
+     * Read a {@link GraphSnapshot} into this graph.
+     */
+    Graph loadSnapshot(File f) throws IOException {
+        GraphSnapshot.load(f, this);
+        return this;
+    }
+
+    /**
+     * Add all edges of an adjacency in compressed sparse row format: the
+     * neighbors of v are neighbors[offsets[v]] .. neighbors[offsets[v+1]-1].
+     * The adjacency must be symmetric with sorted rows.
+     */
+    void load(int[] offsets, int[] neighbors) {
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                if (neighbors[k] >= v) addEdge(v, neighbors[k]);
+            }
+        }
+    }
+
+    /**
+     * Vertices outside members with a neighbor in members.
+     */
     public Stream<Vertex> cut(Block members) {
-        // better to use set difference?
-        return members.parallelStream().flatMap(Vertex::neighbors)
-                .collect(Collectors.toSet()).parallelStream()
-                .filter( v -> !members.contains(v) );
+        RoaringBitmap boundary = new RoaringBitmap();
+        members.forEachIndex(v -> orNeighbors(v, boundary));
+        boundary.andNot(members.bitmap());
+        return Arrays.stream(boundary.toArray()).mapToObj(this::vertex);
     }
 
+    /**
+     * Conductance of community, measured in edges, see {@link Quality}.
+     */
     public double conductance(Block community) {
-        long cut = cut(community).count();
-        return ((double) cut) / (2*community.size() + cut);
+        return new Quality(this).score(community).conductance();
     }
 
 
@@ -0,0 +1,157 @@
+package util.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk construction of a graph from edges added by many threads at once.
+ * <p>
+ * Vertices are striped over shards by their low bits; every edge is stored
+ * in both directions, in the shard of its source, as a long with the
+ * source in the high bits. Each shard is appended to under its own lock,
+ * and a batch of edges takes every lock at most once. {@link #build(Graph)}
+ * scatters the shards into rows, sorts and deduplicates the rows in
+ * parallel and hands the resulting compressed sparse row arrays to the
+ * graph, which loads them in bulk. The result is
+ * the graph that adding the same edges one by one with {@link
+ * Graph#addEdge(Integer, Integer)} gives.
+ */
+public final class GraphBuilder {
+
+    private static final class Shard {
+        long[] edges = new long[64];
+        int size;
+
+        synchronized void add(long edge) {
+            if (size == edges.length) edges = Arrays.copyOf(edges, size * 2);
+            edges[size++] = edge;
+        }
+
+        synchronized void add(long[] batch, int from, int to) {
+            int n = to - from;
+            if (size + n > edges.length) {
+                edges = Arrays.copyOf(edges, Math.max(size + n, edges.length * 2));
+            }
+            System.arraycopy(batch, from, edges, size, n);
+            size += n;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int mask;
+    private final AtomicInteger maxVertex = new AtomicInteger(-1);
+
+    /**
+     * Builder with four shards per available processor.
+     */
+    public GraphBuilder() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shards number of shards, rounded up to a power of two
+     */
+    public GraphBuilder(int shards) {
+        int n = Integer.highestOneBit(Math.max(1, shards) * 2 - 1);
+        this.shards = new Shard[n];
+        for (int i = 0; i < n; i++) this.shards[i] = new Shard();
+        mask = n - 1;
+    }
+
+    private static long pack(int source, int target) {
+        return ((long) source << 32) | target;
+    }
+
+    private void check(int u, int v) {
+        if (u < 0 || v < 0) throw new IllegalArgumentException(
+                "negative vertex in edge " + u + " " + v);
+        int max = Math.max(u, v);
+        if (max > maxVertex.get()) maxVertex.accumulateAndGet(max, Math::max);
+    }
+
+    /**
+     * Add the undirected edge {u, v}. Safe to call from any thread.
+     */
+    public void addEdge(int u, int v) {
+        check(u, v);
+        shards[u & mask].add(pack(u, v));
+        shards[v & mask].add(pack(v, u));
+    }
+
+    /**
+     * Add the edges {sources[i], targets[i]} for i in [from, to). Safe to
+     * call from any thread; the batch is grouped by shard first, so each
+     * shard is locked once.
+     */
+    public void addEdges(int[] sources, int[] targets, int from, int to) {
+        int[] start = new int[shards.length + 1];
+        for (int i = from; i < to; i++) {
+            check(sources[i], targets[i]);
+            start[(sources[i] & mask) + 1]++;
+            start[(targets[i] & mask) + 1]++;
+        }
+        for (int s = 0; s < shards.length; s++) start[s + 1] += start[s];
+        int[] fill = Arrays.copyOf(start, shards.length);
+        long[] grouped = new long[2 * (to - from)];
+        for (int i = from; i < to; i++) {
+            int u = sources[i], v = targets[i];
+            grouped[fill[u & mask]++] = pack(u, v);
+            grouped[fill[v & mask]++] = pack(v, u);
+        }
+        for (int s = 0; s < shards.length; s++) {
+            if (start[s + 1] > start[s]) shards[s].add(grouped, start[s], start[s + 1]);
+        }
+    }
+
+    /**
+     * Load the added edges into g, which should be empty for a bulk load,
+     * optimize it and clear this builder. Must not run concurrently with
+     * adding edges.
+     */
+    public <G extends Graph> G build(G g) {
+        int n = maxVertex.get() + 1;
+        long total = 0;
+        for (Shard shard : shards) total += shard.size;
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalStateException(
+                "too many edges for an in memory graph: " + total / 2);
+        // shards own disjoint vertices, so they count and scatter without races
+        int[] offsets = new int[n + 1];
+        IntStream.range(0, shards.length).parallel().forEach(s -> {
+            Shard shard = shards[s];
+            for (int i = 0; i < shard.size; i++) offsets[(int) (shard.edges[i] >>> 32) + 1]++;
+        });
+        for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+        int[] rows = new int[offsets[n]];
+        IntStream.range(0, shards.length).parallel().forEach(s -> {
+            Shard shard = shards[s];
+            // fill position of the vertices of this shard, by u / shards
+            int[] fill = new int[n / shards.length + 1];
+            int shift = Integer.numberOfTrailingZeros(shards.length);
+            for (int i = 0; i < shard.size; i++) {
+                int u = (int) (shard.edges[i] >>> 32);
+                rows[offsets[u] + fill[u >>> shift]++] = (int) shard.edges[i];
+            }
+            shards[s] = new Shard();
+        });
+        // sort and deduplicate every row in place, then compact
+        int[] degree = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int from = offsets[v], to = offsets[v + 1];
+            Arrays.sort(rows, from, to);
+            int k = from;
+            for (int i = from; i < to; i++) {
+                if (k == from || rows[i] != rows[k - 1]) rows[k++] = rows[i];
+            }
+            degree[v + 1] = k - from;
+        });
+        for (int v = 0; v < n; v++) degree[v + 1] += degree[v];
+        int[] neighbors = new int[degree[n]];
+        IntStream.range(0, n).parallel().forEach(v -> System.arraycopy(
+                rows, offsets[v], neighbors, degree[v], degree[v + 1] - degree[v]));
+        maxVertex.set(-1);
+        g.load(degree, neighbors);
+        g.optimize();
+        return g;
+    }
+}
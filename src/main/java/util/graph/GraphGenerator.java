@@ -0,0 +1,329 @@
+package util.graph;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Generator of large synthetic graphs, written straight to a file.
+ * <p>
+ * Edges are spooled through an {@link EdgeSpool}, so the graph is never
+ * held in memory: the heap needed is the spool buffer plus, for planted
+ * communities, one int per community. Generated vertex i becomes vertex
+ * i + 1 of the written graph, as METIS numbers vertices from 1; the
+ * snapshot format follows the same numbering so both load to the same
+ * graph. Self loops and duplicate edges are dropped, so a graph has
+ * somewhat fewer edges than requested. Output is determined by the seed.
+ */
+public final class GraphGenerator {
+
+    private interface Model {
+        void generate(SplittableRandom random, EdgeSpool spool) throws IOException;
+    }
+
+    private static final int METIS_HEADER = 32;
+
+    private final int vertices;
+    private final Model model;
+    private final Communities communities;
+    private long seed = 1;
+    private int buffer = 1 << 24;
+
+    private GraphGenerator(int vertices, Model model, Communities communities) {
+        if (vertices < 1) throw new IllegalArgumentException(
+                "expected at least one vertex");
+        this.vertices = vertices;
+        this.model = model;
+        this.communities = communities;
+    }
+
+    /**
+     * G(n, m) random graph: edges endpoints drawn uniformly.
+     */
+    public static GraphGenerator erdosRenyi(int vertices, long edges) {
+        return new GraphGenerator(vertices, (random, spool) -> {
+            for (long e = 0; e < edges; e++) {
+                spool.add(random.nextInt(vertices), random.nextInt(vertices));
+            }
+        }, null);
+    }
+
+    /**
+     * R-MAT graph on 2^scale vertices with the Graph500 quadrant
+     * probabilities 0.57, 0.19, 0.19 and 0.05.
+     */
+    public static GraphGenerator rmat(int scale, long edges) {
+        return rmat(scale, edges, 0.57, 0.19, 0.19);
+    }
+
+    /**
+     * R-MAT graph on 2^scale vertices: every edge descends scale levels of
+     * the adjacency matrix, choosing the top left, top right or bottom left
+     * quadrant with probability a, b and c, bottom right otherwise. A
+     * Kronecker graph with a 2x2 initiator.
+     */
+    public static GraphGenerator rmat(int scale, long edges, double a, double b, double c) {
+        if (scale < 1 || scale > 30) throw new IllegalArgumentException(
+                "expected a scale between 1 and 30");
+        return new GraphGenerator(1 << scale, (random, spool) -> {
+            for (long e = 0; e < edges; e++) {
+                int u = 0, v = 0;
+                for (int bit = scale - 1; bit >= 0; bit--) {
+                    double p = random.nextDouble();
+                    if (p >= a + b) u |= 1 << bit;
+                    if (p >= a && p < a + b || p >= a + b + c) v |= 1 << bit;
+                }
+                spool.add(u, v);
+            }
+        }, null);
+    }
+
+    /**
+     * Graph with planted communities in the style of the LFR benchmark.
+     * Degrees follow a power law with exponent 2 up to maxDegree, with
+     * averageDegree on average, community sizes a power law with exponent
+     * 1 between minCommunity and maxCommunity. A fraction mixing of the
+     * edges of every vertex leads outside its community.
+     * <p>
+     * Unlike LFR, edge ends are drawn uniformly within or outside the
+     * community instead of by configuration model, so degrees are only
+     * roughly power law distributed; the mixing is exact in expectation.
+     * Communities are consecutive vertex ranges, see {@link
+     * #communities(Graph)}.
+     */
+    public static GraphGenerator lfr(int vertices, double averageDegree, int maxDegree,
+                                     double mixing, int minCommunity, int maxCommunity) {
+        if (minCommunity < 2 || maxCommunity < minCommunity || minCommunity > vertices)
+            throw new IllegalArgumentException("invalid community sizes");
+        if (averageDegree < 1 || maxDegree < averageDegree)
+            throw new IllegalArgumentException("invalid degrees");
+        Communities communities = new Communities(vertices, minCommunity, maxCommunity);
+        double minDegree = minDegree(averageDegree, maxDegree);
+        return new GraphGenerator(vertices, (random, spool) -> {
+            int[] starts = communities.starts();
+            for (int c = 0; c + 1 < starts.length; c++) {
+                int start = starts[c], size = starts[c + 1] - start;
+                for (int v = start; v < start + size; v++) {
+                    // the other half of the degree arrives from the other ends
+                    int degree = (int) Math.round(powerLaw(random, minDegree, maxDegree));
+                    int initiated = (degree + random.nextInt(2)) / 2;
+                    for (int k = 0; k < initiated; k++) {
+                        if (random.nextDouble() >= mixing) {
+                            int u = start + random.nextInt(size - 1);
+                            spool.add(v, u >= v ? u + 1 : u);
+                        } else if (size < vertices) {
+                            int u = random.nextInt(vertices - size);
+                            spool.add(v, u >= start ? u + size : u);
+                        }
+                    }
+                }
+            }
+        }, communities);
+    }
+
+    /**
+     * Sample of a continuous power law with exponent 2 on [min, max].
+     */
+    private static double powerLaw(SplittableRandom random, double min, double max) {
+        double u = random.nextDouble();
+        return 1 / (1 / min - u * (1 / min - 1 / max));
+    }
+
+    /**
+     * Lower bound of a power law with exponent 2 up to max with the given
+     * mean, found by bisection.
+     */
+    private static double minDegree(double mean, double max) {
+        double lo = 1, hi = mean;
+        for (int i = 0; i < 60; i++) {
+            double min = (lo + hi) / 2;
+            double m = Math.log(max / min) / (1 / min - 1 / max);
+            if (m < mean) lo = min; else hi = min;
+        }
+        return (lo + hi) / 2;
+    }
+
+    public GraphGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Number of directed edges buffered in memory before a sorted run is
+     * written to disk, 8 bytes each.
+     */
+    public GraphGenerator bufferEdges(int edges) {
+        this.buffer = edges;
+        return this;
+    }
+
+    public int vertices() {
+        return vertices;
+    }
+
+    private EdgeSpool generate() throws IOException {
+        EdgeSpool spool = new EdgeSpool(buffer);
+        try {
+            if (communities != null) communities.layout(seed);
+            model.generate(new SplittableRandom(seed), spool);
+            return spool;
+        } catch (IOException | RuntimeException e) {
+            spool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the graph to f in METIS format.
+     *
+     * @return number of undirected edges written
+     */
+    public long writeMetis(File f) throws IOException {
+        long entries;
+        try (EdgeSpool spool = generate();
+             Writer out = new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(f), StandardCharsets.US_ASCII), 1 << 20)) {
+            // the edge count is known at the end, the header is rewritten then
+            out.write(header(0));
+            StringBuilder line = new StringBuilder();
+            entries = spool.rows(vertices, (v, neighbors, degree) -> {
+                line.setLength(0);
+                for (int k = 0; k < degree; k++) {
+                    if (k > 0) line.append(' ');
+                    line.append(neighbors[k] + 1);
+                }
+                line.append('\n');
+                out.append(line);
+            });
+        }
+        try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            file.write(header(entries / 2).getBytes(StandardCharsets.US_ASCII));
+        }
+        return entries / 2;
+    }
+
+    private String header(long edges) {
+        StringBuilder header = new StringBuilder().append(vertices).append(' ').append(edges);
+        while (header.length() < METIS_HEADER - 1) header.append(' ');
+        return header.append('\n').toString();
+    }
+
+    /**
+     * Write the graph to f as a {@link GraphSnapshot}, without bitmaps.
+     *
+     * @return number of undirected edges written
+     */
+    public long writeSnapshot(File f) throws IOException {
+        int bound = vertices + 1;
+        GraphSnapshot layout = new GraphSnapshot(0, 0, bound, 0);
+        long entries;
+        int[] nonEmpty = new int[1];
+        try (EdgeSpool spool = generate();
+             FileChannel offsetsChannel = FileChannel.open(f.toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel neighborsChannel = FileChannel.open(f.toPath(),
+                     StandardOpenOption.WRITE)) {
+            offsetsChannel.position(GraphSnapshot.offsetsPosition());
+            neighborsChannel.position(layout.neighborsPosition());
+            DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(offsetsChannel), 1 << 20));
+            DataOutputStream neighbors = new DataOutputStream(new BufferedOutputStream(
+                    Channels.newOutputStream(neighborsChannel), 1 << 20));
+            long[] offset = new long[1];
+            // vertex 0 has no neighbors
+            offsets.writeLong(0);
+            offsets.writeLong(0);
+            entries = spool.rows(vertices, (v, row, degree) -> {
+                for (int k = 0; k < degree; k++) neighbors.writeInt(row[k] + 1);
+                offset[0] += degree;
+                offsets.writeLong(offset[0]);
+                if (degree > 0) nonEmpty[0]++;
+            });
+            offsets.flush();
+            neighbors.flush();
+        }
+        try (RandomAccessFile out = new RandomAccessFile(f, "rw")) {
+            out.writeInt(GraphSnapshot.MAGIC);
+            out.writeInt(GraphSnapshot.VERSION);
+            out.writeInt(0);
+            out.writeInt(nonEmpty[0]);
+            out.writeLong(bound);
+            out.writeLong(entries);
+        }
+        return entries / 2;
+    }
+
+    /**
+     * The planted communities as blocks of g, a graph loaded from a
+     * written file. Empty for models without communities.
+     */
+    public Partition communities(Graph g) {
+        Partition partition = new Partition();
+        if (communities == null) return partition;
+        int[] starts = communities.layout(seed);
+        for (int c = 0; c + 1 < starts.length; c++) {
+            Block b = new Block(g);
+            for (int v = starts[c]; v < starts[c + 1]; v++) b.add(v + 1);
+            partition.add(b);
+        }
+        return partition;
+    }
+
+    /**
+     * Write the planted communities to f, one line of space separated
+     * vertices per community, like the output of pprcd.
+     */
+    public void writeCommunities(File f) throws IOException {
+        int[] starts = communities == null ? new int[]{0} : communities.layout(seed);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(f), StandardCharsets.US_ASCII), 1 << 20)) {
+            for (int c = 0; c + 1 < starts.length; c++) {
+                for (int v = starts[c]; v < starts[c + 1]; v++) {
+                    if (v > starts[c]) out.write(' ');
+                    out.write(Integer.toString(v + 1));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Consecutive vertex ranges with sizes drawn from a power law with
+     * exponent 1, determined by the seed.
+     */
+    private static final class Communities {
+        private final int vertices, min, max;
+        private int[] starts;
+
+        Communities(int vertices, int min, int max) {
+            this.vertices = vertices;
+            this.min = min;
+            this.max = Math.min(max, vertices);
+        }
+
+        int[] starts() {
+            return starts;
+        }
+
+        int[] layout(long seed) {
+            // a stream of its own, so the layout does not depend on the edges
+            SplittableRandom random = new SplittableRandom(seed ^ 0x5DEECE66DL);
+            IntQueue bounds = new IntQueue();
+            bounds.add(0);
+            int end = 0;
+            while (end < vertices) {
+                int size = (int) (min * Math.pow((double) max / min, random.nextDouble()));
+                if (vertices - end - size < min) size = vertices - end;
+                end += size;
+                bounds.add(end);
+            }
+            int[] s = new int[bounds.size()];
+            for (int i = 0; i < s.length; i++) s[i] = bounds.remove();
+            return starts = s;
+        }
+    }
+}
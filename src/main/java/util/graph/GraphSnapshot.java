@@ -0,0 +1,221 @@
+package util.graph;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary on-disk graph format, meant to be memory mapped.
+ * <p>
+ * Layout, all values big endian:
+ * <pre>
+ * header     int magic, int version, int flags, int vertices,
+ *            long bound, long entries                      (32 bytes)
+ * offsets    long[bound + 1]
+ * neighbors  int[entries]
+ * </pre>
+ * where vertices is the number of vertices with at least one neighbor,
+ * bound is one more than the highest vertex index and the neighbors of v
+ * are neighbors[offsets[v]] .. neighbors[offsets[v+1]-1], sorted ascending.
+ * <p>
+ * If the {@link #BITMAPS} flag is set, the neighbors are followed by a
+ * section of serialized Roaring bitmaps, used by {@link
+ * ImmutableBitSetGraph}. It starts at the next multiple of 8 bytes:
+ * <pre>
+ * long length, int degrees[bound], padding to a multiple of 8,
+ * long positions[bound], byte bitmaps[length]
+ * </pre>
+ * where positions are relative to the start of the bitmaps and no bitmap
+ * crosses a 1 GB boundary.
+ * <p>
+ * Files are recognized by the {@link #EXTENSION} file name extension.
+ */
+public final class GraphSnapshot {
+
+    public static final String EXTENSION = ".csr";
+
+    static final int MAGIC = 0x50505243; // "PPRC"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int BITMAPS = 1;
+
+    final int flags, vertices, bound;
+    final long entries;
+
+    GraphSnapshot(int flags, int vertices, int bound, long entries) {
+        this.flags = flags;
+        this.vertices = vertices;
+        this.bound = bound;
+        this.entries = entries;
+    }
+
+    public static boolean isSnapshot(File f) {
+        return f.getName().endsWith(EXTENSION);
+    }
+
+    static long offsetsPosition() {
+        return HEADER_BYTES;
+    }
+
+    long neighborsPosition() {
+        return HEADER_BYTES + 8L * (bound + 1);
+    }
+
+    long bitmapsPosition() {
+        return align(neighborsPosition() + 4 * entries);
+    }
+
+    static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * Memory map a snapshot, using its bitmap section when there is one.
+     */
+    public static Graph open(File f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            GraphSnapshot snapshot = header(channel);
+            if ((snapshot.flags & BITMAPS) != 0) {
+                ImmutableBitSetGraph g = new ImmutableBitSetGraph();
+                g.map(channel, snapshot);
+                return g;
+            }
+            MappedGraph g = new MappedGraph();
+            g.map(channel, snapshot);
+            return g;
+        }
+    }
+
+    /**
+     * Read and validate the header of a snapshot.
+     */
+    static GraphSnapshot header(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                throw new IllegalArgumentException("Truncated snapshot header");
+        }
+        header.flip();
+        if (header.getInt() != MAGIC)
+            throw new IllegalArgumentException("Not a graph snapshot");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported snapshot " +
+                    "version: " + version);
+        int flags = header.getInt(), vertices = header.getInt();
+        long bound = header.getLong(), entries = header.getLong();
+        GraphSnapshot snapshot = new GraphSnapshot(flags, vertices,
+                (int) bound, entries);
+        if (bound < 0 || bound > Integer.MAX_VALUE ||
+                channel.size() < snapshot.neighborsPosition() + 4 * entries)
+            throw new IllegalArgumentException("Truncated snapshot");
+        return snapshot;
+    }
+
+    /**
+     * Write the adjacency of g to f.
+     */
+    public static void write(Graph g, File f) throws IOException {
+        write(g, f, false);
+    }
+
+    /**
+     * Write the adjacency of g to f, optionally followed by a bitmap section.
+     */
+    public static void write(Graph g, File f, boolean bitmaps) throws IOException {
+        int bound = g.indexBound();
+        long entries = 0;
+        int vertices = 0;
+        for (int v = 0; v < bound; v++) {
+            int degree = g.degreeOf(v);
+            entries += degree;
+            if (degree > 0) vertices++;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(f), 1 << 20))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bitmaps ? BITMAPS : 0);
+            out.writeInt(vertices);
+            out.writeLong(bound);
+            out.writeLong(entries);
+            long offset = 0;
+            out.writeLong(offset);
+            for (int v = 0; v < bound; v++) {
+                offset += g.degreeOf(v);
+                out.writeLong(offset);
+            }
+            for (int v = 0; v < bound; v++) {
+                g.forEachNeighbor(v, u -> {
+                    try {
+                        out.writeInt(u);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            if (bitmaps) {
+                GraphSnapshot snapshot = new GraphSnapshot(BITMAPS, vertices,
+                        bound, entries);
+                writeBitmaps(g, out, snapshot);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeBitmaps(Graph g, DataOutputStream out,
+                                     GraphSnapshot snapshot) throws IOException {
+        int bound = snapshot.bound;
+        long position = snapshot.neighborsPosition() + 4 * snapshot.entries;
+        pad(out, snapshot.bitmapsPosition() - position);
+        long[] starts = new long[bound];
+        long total = ImmutableBitSetGraph.layout(bound,
+                v -> ImmutableBitSetGraph.row(g, v), starts);
+        out.writeLong(total);
+        for (int v = 0; v < bound; v++) out.writeInt(g.degreeOf(v));
+        position = snapshot.bitmapsPosition() + 8 + 4L * bound;
+        pad(out, align(position) - position);
+        for (int v = 0; v < bound; v++) out.writeLong(starts[v]);
+        long written = 0;
+        for (int v = 0; v < bound; v++) {
+            RoaringBitmap row = ImmutableBitSetGraph.row(g, v);
+            if (row == null) continue;
+            pad(out, starts[v] - written);
+            row.serialize(out);
+            written = starts[v] + row.serializedSizeInBytes();
+        }
+    }
+
+    private static void pad(DataOutputStream out, long bytes) throws IOException {
+        for (long i = 0; i < bytes; i++) out.writeByte(0);
+    }
+
+    /**
+     * Read a snapshot into the heap and add it to g in bulk.
+     */
+    static void load(File f, Graph g) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            GraphSnapshot snapshot = header(channel);
+            if (snapshot.entries > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Snapshot too large for " +
+                        "heap graph, use MappedGraph");
+            int[] offsets = new int[snapshot.bound + 1];
+            int[] neighbors = new int[(int) snapshot.entries];
+            MappedGraph mapped = new MappedGraph();
+            mapped.map(channel, snapshot);
+            for (int v = 0; v <= snapshot.bound; v++) {
+                offsets[v] = (int) mapped.offset(v);
+            }
+            for (int k = 0; k < neighbors.length; k++) {
+                neighbors[k] = mapped.neighbor(k);
+            }
+            g.load(offsets, neighbors);
+        }
+    }
+}
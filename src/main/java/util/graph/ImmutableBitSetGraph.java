@@ -0,0 +1,290 @@
+package util.graph;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Read only undirected graph where the neighbors of every vertex are
+ * stored as a serialized {@link ImmutableRoaringBitmap} outside the java
+ * heap.
+ * <p>
+ * Bitmaps are packed into direct buffers, or memory mapped from the bitmap
+ * section of a {@link GraphSnapshot}, in segments of at most 1 GB that no
+ * bitmap crosses. The index, holding the degree and bitmap position of each
+ * vertex, is off heap as well, so the heap footprint and the garbage
+ * collector's work do not grow with the graph. Fewer than 2^28 vertices
+ * are supported, see {@link #MAX_VERTICES}.
+ */
+public class ImmutableBitSetGraph extends Graph {
+
+    static final int SEGMENT_SHIFT = 30;
+    /** Largest number of vertices, whose positions fill one direct buffer. */
+    static final int MAX_VERTICES = Integer.MAX_VALUE / 8;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private ByteBuffer[] segments = {ByteBuffer.allocate(0)};
+    private IntBuffer degrees = IntBuffer.allocate(0);
+    private LongBuffer positions = LongBuffer.allocate(0);
+    private int bound, numVertices;
+    private long entries;
+
+    @Override
+    public void addEdge(Integer source, Integer target) {
+        throw new UnsupportedOperationException("graph is read only");
+    }
+
+    /**
+     * Start of a bitmap of size bytes placed at or after position, moved to
+     * the next segment if it would otherwise cross a segment boundary.
+     */
+    static long place(long position, int size) {
+        long end = position + size - 1;
+        if (size > 0 && (position >>> SEGMENT_SHIFT) != (end >>> SEGMENT_SHIFT))
+            return (end >>> SEGMENT_SHIFT) << SEGMENT_SHIFT;
+        return position;
+    }
+
+    /**
+     * Compute the position of every non-empty row.
+     *
+     * @return total number of bytes needed for the bitmaps
+     */
+    static long layout(int bound, IntFunction<RoaringBitmap> rows,
+                       long[] positions) {
+        long position = 0;
+        for (int v = 0; v < bound; v++) {
+            RoaringBitmap row = rows.apply(v);
+            if (row == null) continue;
+            int size = row.serializedSizeInBytes();
+            positions[v] = place(position, size);
+            position = positions[v] + size;
+        }
+        return position;
+    }
+
+    static RoaringBitmap row(Graph g, int v) {
+        if (g.degreeOf(v) == 0) return null;
+        RoaringBitmap row = new RoaringBitmap();
+        g.forEachNeighbor(v, row::add);
+        row.runOptimize();
+        return row;
+    }
+
+    static void serialize(RoaringBitmap row, ByteBuffer target) {
+        try {
+            row.serialize(new DataOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    target.put((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    target.put(b, off, len);
+                }
+            }));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fail with a clear message if an index of bound vertices does not fit
+     * in direct buffers.
+     */
+    static void checkBound(long bound) {
+        if (bound > MAX_VERTICES) throw new IllegalArgumentException(
+                "too many vertices for ImmutableBitSetGraph: " + bound
+                        + " > " + MAX_VERTICES);
+    }
+
+    /**
+     * Build the bitmaps into direct buffers.
+     */
+    @Override
+    void load(int[] offsets, int[] neighbors) {
+        int n = offsets.length - 1;
+        checkBound(n);
+        // every row is built once, sized and then serialized
+        RoaringBitmap[] rows = new RoaringBitmap[n];
+        for (int v = 0; v < n; v++) {
+            if (offsets[v + 1] == offsets[v]) continue;
+            rows[v] = RoaringBitmap.bitmapOf(
+                    Arrays.copyOfRange(neighbors, offsets[v], offsets[v + 1]));
+            rows[v].runOptimize();
+        }
+        long[] starts = new long[n];
+        long total = layout(n, v -> rows[v], starts);
+        ByteBuffer[] data = new ByteBuffer[(int) Math.max(1,
+                (total + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = ByteBuffer.allocateDirect((int) Math.min(1 << SEGMENT_SHIFT,
+                    total - ((long) i << SEGMENT_SHIFT)));
+        }
+        IntBuffer degrees = ByteBuffer.allocateDirect(4 * n).asIntBuffer();
+        LongBuffer positions = ByteBuffer.allocateDirect(8 * n).asLongBuffer();
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            degrees.put(v, offsets[v + 1] - offsets[v]);
+            positions.put(v, starts[v]);
+            RoaringBitmap row = rows[v];
+            if (row == null) continue;
+            rows[v] = null;
+            ByteBuffer target = data[(int) (starts[v] >>> SEGMENT_SHIFT)].duplicate();
+            target.position((int) (starts[v] & SEGMENT_MASK));
+            serialize(row, target);
+            count++;
+        }
+        segments = data;
+        this.degrees = degrees;
+        this.positions = positions;
+        bound = n;
+        numVertices = count;
+        entries = neighbors.length;
+        modified();
+    }
+
+    @Override
+    Graph loadSnapshot(File f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            GraphSnapshot snapshot = GraphSnapshot.header(channel);
+            if ((snapshot.flags & GraphSnapshot.BITMAPS) == 0) {
+                return super.loadSnapshot(f);
+            }
+            map(channel, snapshot);
+        }
+        return this;
+    }
+
+    /**
+     * Map the bitmap section of a snapshot.
+     */
+    void map(FileChannel channel, GraphSnapshot snapshot) throws IOException {
+        int n = snapshot.bound;
+        checkBound(n);
+        long section = snapshot.bitmapsPosition();
+        ByteBuffer length = ByteBuffer.allocate(8);
+        channel.read(length, section);
+        long total = length.getLong(0);
+        long degreesPosition = section + 8;
+        long positionsPosition = GraphSnapshot.align(degreesPosition + 4L * n);
+        long dataPosition = positionsPosition + 8L * n;
+        degrees = channel.map(FileChannel.MapMode.READ_ONLY, degreesPosition,
+                4L * n).asIntBuffer();
+        positions = channel.map(FileChannel.MapMode.READ_ONLY, positionsPosition,
+                8L * n).asLongBuffer();
+        segments = new ByteBuffer[(int) Math.max(1,
+                (total + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; i++) {
+            long first = (long) i << SEGMENT_SHIFT;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    dataPosition + first, Math.min(1L << SEGMENT_SHIFT, total - first));
+        }
+        bound = n;
+        numVertices = snapshot.vertices;
+        entries = snapshot.entries;
+        modified();
+    }
+
+    /**
+     * Neighbors of v, backed by the off heap buffer.
+     */
+    ImmutableRoaringBitmap bitmap(int v) {
+        long position = positions.get(v);
+        ByteBuffer buffer = segments[(int) (position >>> SEGMENT_SHIFT)].duplicate();
+        buffer.position((int) (position & SEGMENT_MASK));
+        return new ImmutableRoaringBitmap(buffer.slice());
+    }
+
+    @Override
+    public int degreeOf(int v) {
+        return v >= 0 && v < bound ? degrees.get(v) : 0;
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        if (degreeOf(v) > 0) bitmap(v).forEach((org.roaringbitmap.IntConsumer) action::accept);
+    }
+
+    @Override
+    public int indexBound() {
+        return bound;
+    }
+
+    @Override
+    public int degreeOf(Vertex vertex) {
+        return degreeOf(vertex.index());
+    }
+
+    @Override
+    public int[] neighborArray(int v) {
+        return degreeOf(v) == 0 ? new int[0] : bitmap(v).toArray();
+    }
+
+    @Override
+    public Stream<Vertex> neighborsOf(Vertex v) {
+        if (degreeOf(v.index()) == 0) return Stream.empty();
+        return Arrays.stream(bitmap(v.index()).toArray())
+                .mapToObj(this::vertex);
+    }
+
+    @Override
+    public int numEdges() {
+        return (int) (entries / 2);
+    }
+
+    @Override
+    public int numVertices() {
+        return numVertices;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public Vertex vertex(Integer v) {
+        return vertex(v.intValue());
+    }
+
+    /**
+     * Vertices are not cached, so that the heap does not grow with the
+     * graph.
+     */
+    @Override
+    public Vertex vertex(int v) {
+        return new Vertex(v, this);
+    }
+
+    @Override
+    public Set<Vertex> vertices() {
+        return indexedVertices();
+    }
+
+    @Override
+    public Edge edge(Integer source, Integer target) {
+        return new Edge(vertex(source), vertex(target));
+    }
+
+    @Override
+    public List<Vertex> selectSeeds(int distance) {
+        return breadthFirstSeeds(distance);
+    }
+}
@@ -0,0 +1,138 @@
+package util.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from non-negative int keys to double values, with
+ * linear probing. Entries are remembered in insertion order so that they
+ * can be iterated with {@link #keyAt(int)}/{@link #valueAt(int)} and so
+ * that {@link #clear()} only costs time proportional to the number of
+ * entries, not to the capacity of the table.
+ */
+final class IntDoubleMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private double[] values;
+    private int[] slots, entries;
+    private int size;
+    private int mask;
+
+    IntDoubleMap() {
+        this(16);
+    }
+
+    IntDoubleMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity];
+        slots = new int[capacity / 2];
+        entries = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int slot(int key) {
+        int s = hash(key) & mask;
+        while (keys[s] != key && keys[s] != EMPTY) s = (s + 1) & mask;
+        return s;
+    }
+
+    double get(int key) {
+        return values[slot(key)];
+    }
+
+    boolean containsKey(int key) {
+        return keys[slot(key)] == key;
+    }
+
+    /**
+     * Insertion position of key, for {@link #keyAt(int)} and {@link
+     * #valueAt(int)}, or -1 if it has no entry.
+     */
+    int index(int key) {
+        int s = slot(key);
+        return keys[s] == key ? entries[s] : -1;
+    }
+
+    void put(int key, double value) {
+        int s = slot(key);
+        if (keys[s] == EMPTY) {
+            if (size == slots.length) {
+                grow();
+                s = slot(key);
+            }
+            keys[s] = key;
+            entries[s] = size;
+            slots[size++] = s;
+        }
+        values[s] = value;
+    }
+
+    double add(int key, double delta) {
+        int s = slot(key);
+        if (keys[s] == EMPTY) {
+            put(key, delta);
+            return delta;
+        }
+        return values[s] += delta;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Key of the i:th inserted entry.
+     */
+    int keyAt(int i) {
+        return keys[slots[i]];
+    }
+
+    /**
+     * Value of the i:th inserted entry.
+     */
+    double valueAt(int i) {
+        return values[slots[i]];
+    }
+
+    void setValueAt(int i, double value) {
+        values[slots[i]] = value;
+    }
+
+    /**
+     * Remove all entries, in time proportional to {@link #size()}.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            keys[slots[i]] = EMPTY;
+            values[slots[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        int[] oldSlots = slots;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        values = new double[oldValues.length * 2];
+        slots = new int[oldSlots.length * 2];
+        entries = new int[keys.length];
+        mask = keys.length - 1;
+        for (int i = 0; i < size; i++) {
+            int s = slot(oldKeys[oldSlots[i]]);
+            keys[s] = oldKeys[oldSlots[i]];
+            values[s] = oldValues[oldSlots[i]];
+            entries[s] = i;
+            slots[i] = s;
+        }
+    }
+}
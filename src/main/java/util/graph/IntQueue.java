@@ -0,0 +1,51 @@
+package util.graph;
+
+/**
+ * FIFO queue of ints backed by a growable ring buffer.
+ */
+final class IntQueue {
+
+    private int[] elements;
+    private int head, size;
+
+    IntQueue() {
+        this(16);
+    }
+
+    IntQueue(int capacity) {
+        elements = new int[Integer.highestOneBit(Math.max(2, capacity) * 2 - 1)];
+    }
+
+    void add(int e) {
+        if (size == elements.length) grow();
+        elements[(head + size++) & (elements.length - 1)] = e;
+    }
+
+    int remove() {
+        int e = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return e;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        head = size = 0;
+    }
+
+    private void grow() {
+        int[] grown = new int[elements.length * 2];
+        int first = elements.length - head;
+        System.arraycopy(elements, head, grown, 0, first);
+        System.arraycopy(elements, 0, grown, first, head);
+        elements = grown;
+        head = 0;
+    }
+}
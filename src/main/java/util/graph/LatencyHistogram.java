@@ -0,0 +1,88 @@
+package util.graph;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, such as latencies in nanoseconds, that
+ * concurrent threads record without contending.
+ * <p>
+ * Buckets are log-linear like in HDR histograms: values below 16 have a
+ * bucket each, larger values share a bucket with others of the same
+ * power of two and the same 4 leading bits, so a percentile is reported
+ * within 1/16 of its value. Every bucket is a {@link LongAdder}.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4, SUB = 1 << SUB_BITS;
+
+    private final LongAdder[] buckets = new LongAdder[(64 - SUB_BITS + 1) * SUB];
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /**
+     * Largest value that falls into bucket i.
+     */
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int exponent = i / SUB + SUB_BITS - 1, sub = i % SUB;
+        long lower = (long) (SUB + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Value at or below which a fraction q of the recorded values lie, an
+     * upper bound within 1/16 of it. 0 if nothing was recorded.
+     */
+    public long percentile(double q) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) total += counts[i] = buckets[i].sum();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * total)), seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (LongAdder b : buckets) b.reset();
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
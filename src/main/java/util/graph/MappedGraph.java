@@ -0,0 +1,193 @@
+package util.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Read only undirected graph in compressed sparse row format, stored
+ * outside the java heap.
+ * <p>
+ * Loading a {@link GraphSnapshot} memory maps the file without copying,
+ * so startup does not depend on the size of the graph and several JVMs
+ * reading the same snapshot share the page cache. Graphs loaded from other
+ * formats are copied into direct buffers. Offsets and neighbors are split
+ * into segments since a single buffer holds at most 2 GB.
+ */
+public class MappedGraph extends Graph {
+
+    private static final int OFFSET_SHIFT = 27, NEIGHBOR_SHIFT = 28;
+    private static final int OFFSET_MASK = (1 << OFFSET_SHIFT) - 1;
+    private static final int NEIGHBOR_MASK = (1 << NEIGHBOR_SHIFT) - 1;
+
+    private LongBuffer[] offsets = {LongBuffer.wrap(new long[1])};
+    private IntBuffer[] neighbors = {IntBuffer.allocate(0)};
+    private int bound, numVertices;
+    private long entries;
+
+    @Override
+    public void addEdge(Integer source, Integer target) {
+        throw new UnsupportedOperationException("graph is read only");
+    }
+
+    /**
+     * Map the offsets and neighbors sections of a snapshot.
+     */
+    void map(FileChannel channel, GraphSnapshot snapshot) throws IOException {
+        long numOffsets = snapshot.bound + 1L;
+        offsets = new LongBuffer[segments(numOffsets, OFFSET_SHIFT)];
+        for (int i = 0; i < offsets.length; i++) {
+            long first = (long) i << OFFSET_SHIFT;
+            long count = Math.min(numOffsets - first, 1L << OFFSET_SHIFT);
+            offsets[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    GraphSnapshot.offsetsPosition() + 8 * first, 8 * count)
+                    .asLongBuffer();
+        }
+        neighbors = new IntBuffer[segments(snapshot.entries, NEIGHBOR_SHIFT)];
+        for (int i = 0; i < neighbors.length; i++) {
+            long first = (long) i << NEIGHBOR_SHIFT;
+            long count = Math.min(snapshot.entries - first, 1L << NEIGHBOR_SHIFT);
+            neighbors[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    snapshot.neighborsPosition() + 4 * first, 4 * count)
+                    .asIntBuffer();
+        }
+        bound = snapshot.bound;
+        numVertices = snapshot.vertices;
+        entries = snapshot.entries;
+        modified();
+    }
+
+    private static int segments(long count, int shift) {
+        return (int) Math.max(1, (count + (1L << shift) - 1) >>> shift);
+    }
+
+    @Override
+    Graph loadSnapshot(File f) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            map(channel, GraphSnapshot.header(channel));
+        }
+        return this;
+    }
+
+    /**
+     * Copy the adjacency into direct buffers.
+     */
+    @Override
+    void load(int[] offsets, int[] neighbors) {
+        this.offsets = new LongBuffer[segments(offsets.length, OFFSET_SHIFT)];
+        for (int i = 0; i < this.offsets.length; i++) {
+            int first = i << OFFSET_SHIFT;
+            int count = Math.min(offsets.length - first, 1 << OFFSET_SHIFT);
+            LongBuffer segment = ByteBuffer.allocateDirect(8 * count).asLongBuffer();
+            for (int v = first; v < first + count; v++) segment.put(offsets[v]);
+            this.offsets[i] = segment;
+        }
+        this.neighbors = new IntBuffer[segments(neighbors.length, NEIGHBOR_SHIFT)];
+        for (int i = 0; i < this.neighbors.length; i++) {
+            int first = i << NEIGHBOR_SHIFT;
+            int count = Math.min(neighbors.length - first, 1 << NEIGHBOR_SHIFT);
+            this.neighbors[i] = ByteBuffer.allocateDirect(4 * count).asIntBuffer()
+                    .put(neighbors, first, count);
+        }
+        int count = 0;
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            if (offsets[v + 1] > offsets[v]) count++;
+        }
+        bound = offsets.length - 1;
+        numVertices = count;
+        entries = neighbors.length;
+        modified();
+    }
+
+    long offset(int v) {
+        return offsets[v >>> OFFSET_SHIFT].get(v & OFFSET_MASK);
+    }
+
+    int neighbor(long k) {
+        return neighbors[(int) (k >>> NEIGHBOR_SHIFT)].get((int) (k & NEIGHBOR_MASK));
+    }
+
+    @Override
+    public int degreeOf(int v) {
+        return v >= 0 && v < bound ? (int) (offset(v + 1) - offset(v)) : 0;
+    }
+
+    @Override
+    public void forEachNeighbor(int v, IntConsumer action) {
+        if (degreeOf(v) == 0) return;
+        for (long k = offset(v), end = offset(v + 1); k < end; k++) {
+            action.accept(neighbor(k));
+        }
+    }
+
+    @Override
+    public int indexBound() {
+        return bound;
+    }
+
+    @Override
+    public int degreeOf(Vertex vertex) {
+        return degreeOf(vertex.index());
+    }
+
+    @Override
+    public Stream<Vertex> neighborsOf(Vertex v) {
+        int i = v.index();
+        if (degreeOf(i) == 0) return Stream.empty();
+        return LongStream.range(offset(i), offset(i + 1))
+                .mapToObj(k -> vertex(neighbor(k)));
+    }
+
+    @Override
+    public int numEdges() {
+        return (int) (entries / 2);
+    }
+
+    @Override
+    public int numVertices() {
+        return numVertices;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public Vertex vertex(Integer v) {
+        return vertex(v.intValue());
+    }
+
+    /**
+     * Vertices are not cached, so that the heap does not grow with the
+     * graph.
+     */
+    @Override
+    public Vertex vertex(int v) {
+        return new Vertex(v, this);
+    }
+
+    @Override
+    public Set<Vertex> vertices() {
+        return indexedVertices();
+    }
+
+    @Override
+    public Edge edge(Integer source, Integer target) {
+        return new Edge(vertex(source), vertex(target));
+    }
+
+    @Override
+    public List<Vertex> selectSeeds(int distance) {
+        return breadthFirstSeeds(distance);
+    }
+}
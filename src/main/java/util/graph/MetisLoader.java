@@ -0,0 +1,279 @@
+package util.graph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel reader for graph files in METIS format.
+ * <p>
+ * The file is memory mapped and split into line aligned chunks, which are
+ * parsed directly from bytes on the common fork/join pool. The parsed
+ * adjacency lists are then symmetrized, sorted and deduplicated in bulk
+ * into compressed sparse row arrays and handed to {@link Graph#load(int[],
+ * int[])}. Lines are interpreted exactly as {@link Graph#loadMetis(File)}
+ * does: lines starting with '%' are skipped, the first non empty line is
+ * the header and every following line, empty for an isolated vertex, lists
+ * the neighbors of the next vertex, starting at 1.
+ */
+final class MetisLoader {
+
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int MAX_CHUNK = 1 << 27;
+
+    private final FileChannel channel;
+    private final long size;
+    private int headerVertices, headerEdges;
+
+    /**
+     * Lines of one chunk in local compressed sparse row format: the
+     * neighbors of line i are values[rows[i] .. rows[i+1]-1].
+     */
+    private static final class Chunk {
+        final long start, end;
+        int base, lines, size, max;
+        int[] rows = new int[1024];
+        int[] values;
+
+        Chunk(long start, long end, int expected) {
+            this.start = start;
+            this.end = end;
+            this.values = new int[Math.max(16, expected)];
+        }
+
+        void endLine() {
+            if (lines + 2 > rows.length) rows = Arrays.copyOf(rows, rows.length * 2);
+            rows[++lines] = size;
+        }
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, values.length * 2);
+            values[size++] = value;
+            if (value > max) max = value;
+        }
+    }
+
+    private MetisLoader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    static void load(File f, Graph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(f.toPath(),
+                StandardOpenOption.READ)) {
+            new MetisLoader(channel).load(graph);
+        }
+    }
+
+    private void load(Graph graph) throws IOException {
+        long body = readHeader();
+        List<Chunk> chunks = split(body);
+        chunks.parallelStream().forEach(this::parse);
+        int lines = 0, max = 0;
+        for (Chunk c : chunks) {
+            c.base = lines;
+            lines += c.lines;
+            max = Math.max(max, c.max);
+        }
+        // vertices the header announces count only as far as there are lines
+        max = Math.max(max, Math.min(headerVertices, lines));
+        int n = Math.max(max, lines) + 1;
+        int[] offsets = new int[n + 1];
+        int[] neighbors = build(chunks, n, offsets);
+        graph.load(offsets, neighbors);
+    }
+
+    private MappedByteBuffer map(long start, long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    /**
+     * Parse and validate the header line.
+     *
+     * @return position of the first byte after the header line
+     */
+    private long readHeader() throws IOException {
+        long pos = 0;
+        while (pos < size) {
+            long end = Math.min(size, pos + MAX_CHUNK);
+            ByteBuffer buf = map(pos, end);
+            int i = 0, limit = buf.limit();
+            while (i < limit) {
+                int eol = i;
+                while (eol < limit && buf.get(eol) != '\n') eol++;
+                if (eol == limit && end < size) break; // line continues
+                if (!skip(buf, i, eol)) {
+                    Chunk header = new Chunk(pos + i, pos + eol, 16);
+                    parseLine(buf, i, eol, header);
+                    if (header.size < 2) throw new IllegalArgumentException(
+                            "Malformed header in file");
+                    headerVertices = header.values[0];
+                    headerEdges = header.values[1];
+                    if (header.size > 2 && header.values[2] != 0) {
+                        throw new IllegalArgumentException("Found unsupported " +
+                                "format in file: " + header.values[2]);
+                    }
+                    return pos + Math.min(eol + 1, limit);
+                }
+                i = eol + 1;
+            }
+            if (i == 0) throw new IllegalArgumentException("Line too long");
+            pos += i;
+        }
+        throw new IllegalArgumentException("Missing header in file");
+    }
+
+    /**
+     * Split [body, size) into line aligned chunks.
+     */
+    private List<Chunk> split(long body) throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long chunkSize = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK,
+                (size - body) / (4 * parallelism) + 1));
+        // average number of neighbor entries per byte, used to presize
+        double density = size > body ? 2. * headerEdges / (size - body) : 0;
+        List<Chunk> chunks = new ArrayList<>();
+        long start = body;
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            // move end past the next newline
+            while (end < size) {
+                probe.clear();
+                int read = channel.read(probe, end);
+                int i = 0;
+                while (i < read && probe.get(i) != '\n') i++;
+                end += i;
+                if (i < read) {
+                    end++;
+                    break;
+                }
+            }
+            // the header is not trusted: an entry takes at least two bytes
+            long bound = Math.min(Integer.MAX_VALUE - 8, (end - start) / 2 + 1);
+            chunks.add(new Chunk(start, end, (int) Math.min(bound,
+                    (long) (density * (end - start) * 1.1))));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private void parse(Chunk c) {
+        try {
+            ByteBuffer buf = map(c.start, c.end);
+            int i = 0, limit = buf.limit();
+            while (i < limit) {
+                int eol = i;
+                while (eol < limit && buf.get(eol) != '\n') eol++;
+                if (!isComment(buf, i, eol)) {
+                    parseLine(buf, i, eol, c);
+                    c.endLine();
+                }
+                i = eol + 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * True for lines that are empty or comments.
+     */
+    private static boolean skip(ByteBuffer buf, int from, int to) {
+        if (to > from && buf.get(to - 1) == '\r') to--;
+        return to == from || isComment(buf, from, to);
+    }
+
+    private static boolean isComment(ByteBuffer buf, int from, int to) {
+        return to > from && buf.get(from) == '%';
+    }
+
+    /**
+     * Append the integers of buf[from, to) to c, stopping at the first token
+     * that is not an integer like {@link java.util.Scanner#hasNextInt()}.
+     */
+    private static void parseLine(ByteBuffer buf, int from, int to, Chunk c) {
+        int i = from;
+        while (i < to) {
+            byte b = buf.get(i);
+            if (b == ' ' || b == '\t' || b == '\r') {
+                i++;
+                continue;
+            }
+            long value = 0;
+            int start = i;
+            while (i < to && (b = buf.get(i)) >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (value > Integer.MAX_VALUE) return;
+                i++;
+            }
+            if (i == start || (i < to && b != ' ' && b != '\t' && b != '\r'))
+                return;
+            c.add((int) value);
+        }
+    }
+
+    /**
+     * Symmetrize the parsed adjacency lists into sorted, duplicate free
+     * compressed sparse row arrays over vertices [0, n).
+     */
+    private static int[] build(List<Chunk> chunks, int n, int[] offsets) {
+        AtomicIntegerArray degree = new AtomicIntegerArray(n);
+        chunks.parallelStream().forEach(c -> {
+            for (int row = 0; row < c.lines; row++) {
+                int v = c.base + row + 1;
+                for (int k = c.rows[row]; k < c.rows[row + 1]; k++) {
+                    if (c.values[k] != v) degree.incrementAndGet(c.values[k]);
+                }
+                degree.addAndGet(v, c.rows[row + 1] - c.rows[row]);
+            }
+        });
+        long total = 0;
+        for (int v = 0; v < n; v++) {
+            offsets[v] = (int) total;
+            total += degree.get(v);
+        }
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException(
+                "Too many edges: " + total);
+        offsets[n] = (int) total;
+        int[] adj = new int[(int) total];
+        AtomicIntegerArray cursor = new AtomicIntegerArray(Arrays.copyOf(offsets, n));
+        chunks.parallelStream().forEach(c -> {
+            for (int row = 0; row < c.lines; row++) {
+                int v = c.base + row + 1;
+                for (int k = c.rows[row]; k < c.rows[row + 1]; k++) {
+                    int u = c.values[k];
+                    adj[cursor.getAndIncrement(v)] = u;
+                    if (u != v) adj[cursor.getAndIncrement(u)] = v;
+                }
+            }
+        });
+        // sort and deduplicate every row in place, then compact
+        int[] length = new int[n];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int from = offsets[v], to = offsets[v + 1];
+            Arrays.sort(adj, from, to);
+            int w = from;
+            for (int i = from; i < to; i++) {
+                if (i == from || adj[i] != adj[i - 1]) adj[w++] = adj[i];
+            }
+            length[v] = w - from;
+        });
+        int[] compact = new int[Arrays.stream(length).sum()];
+        int[] start = new int[n + 1];
+        for (int v = 0; v < n; v++) start[v + 1] = start[v] + length[v];
+        IntStream.range(0, n).parallel().forEach(v ->
+                System.arraycopy(adj, offsets[v], compact, start[v], length[v]));
+        System.arraycopy(start, 0, offsets, 0, n + 1);
+        return compact;
+    }
+}
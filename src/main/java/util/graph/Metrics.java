@@ -0,0 +1,185 @@
+package util.graph;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers of community detection runs.
+ * <p>
+ * Metrics are collected for a graph once they are set with {@link
+ * Graph#setMetrics(Metrics)}; without them detection only checks for a
+ * null field once per seed. Every seed adds its pushes, touched vertices
+ * and sweep length, raises the queue high water mark and records its
+ * latency. Counters are {@link LongAdder}s, so the workers of a parallel
+ * detection do not contend on them. Phases are timed by the caller with
+ * {@link #add(Phase, long)}, push and sweep are timed per seed.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    public enum Phase {LOAD, SEEDS, DETECTION, PUSH, SWEEP, JOIN, QUALITY}
+
+    private final LongAdder seeds = new LongAdder(), pushes = new LongAdder(),
+            touched = new LongAdder(), sweepLength = new LongAdder();
+    private final LongAccumulator queueHighWater = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder[] phases = new LongAdder[Phase.values().length];
+    private ObjectName name;
+
+    public Metrics() {
+        for (int i = 0; i < phases.length; i++) phases[i] = new LongAdder();
+    }
+
+    /**
+     * Record a seed whose push started at start, switched to the sweep at
+     * swept and ended at end, all in System.nanoTime.
+     */
+    void seed(long pushes, int touched, int queueHighWater, int sweepLength,
+              long start, long swept, long end) {
+        seeds.increment();
+        this.pushes.add(pushes);
+        this.touched.add(touched);
+        this.queueHighWater.accumulate(queueHighWater);
+        this.sweepLength.add(sweepLength);
+        phases[Phase.PUSH.ordinal()].add(swept - start);
+        phases[Phase.SWEEP.ordinal()].add(end - swept);
+        latency.record(end - start);
+    }
+
+    /**
+     * Add nanos to the time spent in phase.
+     */
+    public void add(Phase phase, long nanos) {
+        phases[phase.ordinal()].add(nanos);
+    }
+
+    public long nanos(Phase phase) {
+        return phases[phase.ordinal()].sum();
+    }
+
+    /**
+     * Latencies of single seeds, push and sweep, in nanoseconds.
+     */
+    public LatencyHistogram seedLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getSeeds() {
+        return seeds.sum();
+    }
+
+    @Override
+    public long getPushes() {
+        return pushes.sum();
+    }
+
+    @Override
+    public long getTouchedVertices() {
+        return touched.sum();
+    }
+
+    @Override
+    public long getQueueHighWater() {
+        return queueHighWater.get();
+    }
+
+    /**
+     * Candidates examined by all sweeps.
+     */
+    @Override
+    public long getSweepLength() {
+        return sweepLength.sum();
+    }
+
+    @Override
+    public long getSeedLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.5));
+    }
+
+    @Override
+    public long getSeedLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.percentile(0.99));
+    }
+
+    @Override
+    public long getSeedLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.max());
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        for (Phase p : Phase.values()) {
+            millis.put(p.name().toLowerCase(), TimeUnit.NANOSECONDS.toMillis(nanos(p)));
+        }
+        return millis;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder a : new LongAdder[]{seeds, pushes, touched, sweepLength}) a.reset();
+        for (LongAdder p : phases) p.reset();
+        queueHighWater.reset();
+        latency.reset();
+    }
+
+    /**
+     * Register with the platform MBean server as util.graph:type=Metrics,
+     * name=name.
+     */
+    public Metrics register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("util.graph:type=Metrics,name="
+                    + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            this.name = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    public void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        name = null;
+    }
+
+    /**
+     * Write all metrics to f as metric,value lines.
+     */
+    public void write(File f) throws IOException {
+        try (PrintWriter out = new PrintWriter(f, "UTF-8")) {
+            out.println("metric,value");
+            out.println("seeds," + getSeeds());
+            out.println("pushes," + getPushes());
+            out.println("touched_vertices," + getTouchedVertices());
+            out.println("queue_high_water," + getQueueHighWater());
+            out.println("sweep_length," + getSweepLength());
+            for (double q : new double[]{0.5, 0.9, 0.99}) {
+                out.println("seed_latency_p" + Math.round(q * 100) + "_us,"
+                        + TimeUnit.NANOSECONDS.toMicros(latency.percentile(q)));
+            }
+            out.println("seed_latency_max_us," + getSeedLatencyMaxMicros());
+            for (Map.Entry<String, Long> p : getPhaseMillis().entrySet()) {
+                out.println(p.getKey() + "_ms," + p.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package util.graph;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link Metrics}.
+ */
+public interface MetricsMXBean {
+
+    long getSeeds();
+
+    long getPushes();
+
+    long getTouchedVertices();
+
+    long getQueueHighWater();
+
+    long getSweepLength();
+
+    long getSeedLatencyP50Micros();
+
+    long getSeedLatencyP99Micros();
+
+    long getSeedLatencyMaxMicros();
+
+    /**
+     * Time spent in every phase, in milliseconds.
+     */
+    Map<String, Long> getPhaseMillis();
+
+    void reset();
+}
@@ -0,0 +1,338 @@
+package util.graph;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Personalized PageRank push kernel working on vertex indices only.
+ * <p>
+ * Estimates and residuals are kept in primitive open addressing maps and
+ * the work queue is an int ring buffer, all of which are reused between
+ * calls to {@link #run(int, double, double)}. Pushing therefore does not
+ * allocate once the buffers have grown to fit the largest neighborhood
+ * seen, provided the graph can enumerate neighbors without allocating
+ * (see {@link CsrGraph}).
+ * <p>
+ * The default push order is the same FIFO order as the original map based
+ * implementation, so the estimates are bit for bit identical. The other
+ * {@link PushOrder}s schedule entries of the residual map by priority,
+ * from an indexed heap or from buckets.
+ */
+public final class PprPush {
+
+    private Graph graph;
+    private final IntDoubleMap x = new IntDoubleMap(), r = new IntDoubleMap();
+    private final IntQueue queue = new IntQueue();
+    private final IntConsumer spread = this::spread,
+            spreadScheduled = this::spreadScheduled;
+
+    private PushOrder order = PushOrder.FIFO;
+    // per entry of r, for the priority orders: degree, and heap position
+    // or bucket while scheduled, -1 otherwise
+    private int[] degreeAt = new int[16], scheduled = new int[16];
+    private int[] heap = new int[16];
+    private int heapSize, queued, current;
+    private final IntQueue[] buckets = new IntQueue[64];
+    private int top;
+
+    private double alpha, tolerance, mass;
+    private long pushes;
+    private int maxQueue;
+
+    public PprPush(Graph graph) {
+        this.graph = graph;
+    }
+
+    public Graph graph() {
+        return graph;
+    }
+
+    public PprPush order(PushOrder order) {
+        this.order = order;
+        return this;
+    }
+
+    public PushOrder order() {
+        return order;
+    }
+
+    /**
+     * Run subsequent pushes on another graph, keeping the buffers.
+     */
+    void bind(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Compute an approximate personalized PageRank vector for seed, the
+     * residual of every vertex ends up below degree * tolerance.
+     */
+    public void run(int seed, double alpha, double tolerance) {
+        x.clear();
+        r.clear();
+        queue.clear();
+        pushes = 0;
+        maxQueue = 1;
+        this.alpha = alpha;
+        this.tolerance = tolerance;
+        r.put(seed, 1.);
+        if (order == PushOrder.FIFO) {
+            queue.add(seed);
+            drain();
+        } else {
+            startScheduling();
+            schedule(entry(seed, 0));
+            drainScheduled();
+        }
+    }
+
+    /**
+     * Continue the last run with a tolerance no larger than its own,
+     * pushing the residuals left above degree * tolerance, in the order
+     * their vertices were first touched for FIFO. Estimates and residuals
+     * satisfy the same invariant as after a run from scratch, so the
+     * result is a valid approximation for the new tolerance; pushes keeps
+     * counting.
+     */
+    public void resume(double tolerance) {
+        if (tolerance > this.tolerance) throw new IllegalArgumentException(
+                "cannot resume with a larger tolerance: " + tolerance
+                        + " > " + this.tolerance);
+        this.tolerance = tolerance;
+        if (order == PushOrder.FIFO) {
+            queue.clear();
+            for (int i = 0; i < r.size(); i++) {
+                int v = r.keyAt(i);
+                if (r.valueAt(i) >= graph.degreeOf(v) * tolerance) queue.add(v);
+            }
+            if (queue.size() > maxQueue) maxQueue = queue.size();
+            drain();
+        } else {
+            startScheduling();
+            for (int e = 0; e < r.size(); e++) {
+                entry(r.keyAt(e), e);
+                if (r.valueAt(e) >= degreeAt[e] * tolerance) schedule(e);
+            }
+            drainScheduled();
+        }
+    }
+
+    private void drain() {
+        while (!queue.isEmpty()) {
+            int v = queue.remove();
+            int degree = graph.degreeOf(v);
+            double rv = r.get(v);
+            x.put(v, x.get(v) + (1 - alpha) * rv);
+            mass = alpha * rv / (2 * degree);
+            graph.forEachNeighbor(v, spread);
+            rv = mass * degree;
+            r.put(v, rv);
+            if (rv >= degree * tolerance)
+                queue.add(v);
+            pushes++;
+            if (queue.size() > maxQueue) maxQueue = queue.size();
+        }
+    }
+
+    private void spread(int u) {
+        double ur = r.get(u);
+        double rdegtol = graph.degreeOf(u) * tolerance;
+        if (ur < rdegtol && (ur + mass) >= rdegtol)
+            queue.add(u);
+        r.put(u, ur + mass);
+    }
+
+    private void startScheduling() {
+        heapSize = queued = 0;
+        top = -1;
+        for (IntQueue b : buckets) if (b != null) b.clear();
+    }
+
+    /**
+     * Record the degree of v, whose residual entry is e, and mark it
+     * unscheduled.
+     */
+    private int entry(int v, int e) {
+        if (e >= degreeAt.length) {
+            int capacity = Math.max(e + 1, degreeAt.length * 2);
+            degreeAt = Arrays.copyOf(degreeAt, capacity);
+            scheduled = Arrays.copyOf(scheduled, capacity);
+        }
+        degreeAt[e] = graph.degreeOf(v);
+        scheduled[e] = -1;
+        return e;
+    }
+
+    private void drainScheduled() {
+        int e;
+        while ((e = next()) >= 0) {
+            int v = r.keyAt(e), degree = degreeAt[e];
+            double rv = r.valueAt(e);
+            x.put(v, x.get(v) + (1 - alpha) * rv);
+            mass = alpha * rv / (2 * degree);
+            current = e;
+            graph.forEachNeighbor(v, spreadScheduled);
+            current = -1;
+            rv = mass * degree;
+            r.setValueAt(e, rv);
+            if (rv >= degree * tolerance) schedule(e);
+            pushes++;
+            if (queued > maxQueue) maxQueue = queued;
+        }
+    }
+
+    private void spreadScheduled(int u) {
+        int e = r.index(u);
+        if (e < 0) {
+            r.put(u, 0);
+            e = entry(u, r.size() - 1);
+        }
+        double ur = r.valueAt(e) + mass;
+        r.setValueAt(e, ur);
+        // the vertex being pushed is scheduled afterwards, if at all
+        if (e != current && ur >= degreeAt[e] * tolerance) schedule(e);
+    }
+
+    private double priority(int e) {
+        return r.valueAt(e) / degreeAt[e];
+    }
+
+    /**
+     * Schedule entry e, whose residual is above the threshold and has only
+     * grown since it was last scheduled.
+     */
+    private void schedule(int e) {
+        if (order == PushOrder.MAX_RESIDUAL) {
+            int i = scheduled[e];
+            if (i < 0) {
+                if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+                i = heapSize++;
+                queued++;
+            }
+            siftUp(e, i);
+        } else {
+            int level = Math.min(63, Math.getExponent(
+                    r.valueAt(e) / (degreeAt[e] * tolerance)));
+            if (scheduled[e] >= level) return;
+            if (scheduled[e] < 0) queued++;
+            if (buckets[level] == null) buckets[level] = new IntQueue();
+            buckets[level].add(e);
+            scheduled[e] = level;
+            if (level > top) top = level;
+        }
+    }
+
+    /**
+     * Remove and return the scheduled entry to push next, -1 if none.
+     */
+    private int next() {
+        if (order == PushOrder.MAX_RESIDUAL) {
+            if (heapSize == 0) return -1;
+            int e = heap[0];
+            scheduled[e] = -1;
+            queued--;
+            if (--heapSize > 0) siftDown(heap[heapSize], 0);
+            return e;
+        }
+        while (top >= 0) {
+            IntQueue bucket = buckets[top];
+            if (bucket == null || bucket.isEmpty()) {
+                top--;
+                continue;
+            }
+            int e = bucket.remove();
+            // entries moved up to a higher bucket leave a stale copy behind
+            if (scheduled[e] != top) continue;
+            scheduled[e] = -1;
+            queued--;
+            return e;
+        }
+        return -1;
+    }
+
+    private void siftUp(int e, int i) {
+        double p = priority(e);
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (priority(heap[parent]) >= p) break;
+            heap[i] = heap[parent];
+            scheduled[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = e;
+        scheduled[e] = i;
+    }
+
+    private void siftDown(int e, int i) {
+        double p = priority(e);
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && priority(heap[child + 1]) > priority(heap[child]))
+                child++;
+            if (priority(heap[child]) <= p) break;
+            heap[i] = heap[child];
+            scheduled[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = e;
+        scheduled[e] = i;
+    }
+
+    /**
+     * Number of vertices with a non-empty estimate, in the order they were
+     * first pushed.
+     */
+    public int size() {
+        return x.size();
+    }
+
+    public int vertex(int i) {
+        return x.keyAt(i);
+    }
+
+    public double estimate(int i) {
+        return x.valueAt(i);
+    }
+
+    /**
+     * Number of vertices that received residual mass during the last run.
+     */
+    public int touched() {
+        return r.size();
+    }
+
+    /**
+     * True if every residual is below degree * tolerance.
+     */
+    boolean converged() {
+        for (int i = 0; i < r.size(); i++) {
+            if (r.valueAt(i) >= graph.degreeOf(r.keyAt(i)) * tolerance) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sum of the residuals left by the last run, the probability mass not
+     * yet settled into estimates.
+     */
+    public double residual() {
+        double sum = 0;
+        for (int i = 0; i < r.size(); i++) sum += r.valueAt(i);
+        return sum;
+    }
+
+    /**
+     * Number of push operations performed during the last run.
+     */
+    public long pushes() {
+        return pushes;
+    }
+
+    /**
+     * Largest number of vertices queued at once during the last run.
+     */
+    public int maxQueue() {
+        return maxQueue;
+    }
+}
@@ -0,0 +1,108 @@
+package util.graph;
+
+import java.util.Arrays;
+
+/**
+ * Personalized PageRank of one seed, refined through decreasing
+ * tolerances.
+ * <p>
+ * The push only ever moves residual mass into estimates, so the estimates
+ * and residuals left by a run with one tolerance are a valid starting
+ * point for a smaller one. Each {@link #refine(double)} continues from
+ * there instead of starting again from the seed, which makes a scan over
+ * several tolerances cost about as much as a run with the smallest.
+ * The community at the current tolerance is available after every step.
+ */
+public final class PprState {
+
+    private final Graph graph;
+    private final int seed;
+    private final double alpha;
+    private final PprPush push;
+    private final SweepCut sweep;
+    private double tolerance = Double.NaN;
+    private int[] order = new int[0];
+    private double[] scores = new double[0];
+
+    public PprState(Graph graph, Vertex seed, double alpha) {
+        this.graph = graph;
+        this.seed = seed.index();
+        this.alpha = alpha;
+        this.push = new PprPush(graph).order(graph.pushOrder());
+        this.sweep = new SweepCut(graph);
+    }
+
+    /**
+     * Push until every residual is below degree * tolerance, which must
+     * not be larger than the tolerance of the previous refinement.
+     */
+    public PprState refine(double tolerance) {
+        if (Double.isNaN(this.tolerance)) {
+            push.run(seed, alpha, tolerance);
+        } else {
+            push.resume(tolerance);
+        }
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    public double alpha() {
+        return alpha;
+    }
+
+    /**
+     * Tolerance of the last refinement, NaN before the first.
+     */
+    public double tolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Push operations performed over all refinements.
+     */
+    public long pushes() {
+        return push.pushes();
+    }
+
+    /**
+     * Residual mass left at the current tolerance.
+     */
+    public double residual() {
+        return push.residual();
+    }
+
+    /**
+     * The community at the current tolerance, the prefix of lowest
+     * conductance of the vertices ranked by estimate / degree.
+     */
+    public Block community() {
+        return community(null);
+    }
+
+    /**
+     * Like {@link #community()}, with a sweep stopped early by limit.
+     */
+    public Block community(SweepLimit limit) {
+        if (Double.isNaN(tolerance)) throw new IllegalStateException(
+                "refine before asking for a community");
+        int n = push.size();
+        if (order.length < n) {
+            order = Arrays.copyOf(order, n);
+            scores = Arrays.copyOf(scores, n);
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = push.vertex(i);
+            scores[i] = push.estimate(i) / graph.degreeOf(order[i]);
+        }
+        Block block = new Block(graph);
+        if (limit == null) {
+            Sorting.byScoreDescending(order, scores, 0, n);
+            int best = sweep.run(order, n);
+            for (int i = 0; i < best; i++) block.add(order[i]);
+        } else {
+            int best = sweep.run(order, scores, n, limit);
+            for (int i = 0; i < best; i++) block.add(sweep.vertex(i));
+        }
+        return block;
+    }
+}
@@ -0,0 +1,71 @@
+package util.graph;
+
+import java.util.Arrays;
+
+/**
+ * Scratch buffers for community detection from one seed: the push kernel,
+ * the ranking arrays and the sweep. Each thread owns one workspace
+ * which is reused for every seed it processes, so clearing it only costs
+ * time proportional to the vertices touched by the previous seed.
+ */
+final class PprWorkspace {
+
+    private static final ThreadLocal<PprWorkspace> LOCAL =
+            ThreadLocal.withInitial(PprWorkspace::new);
+
+    final PprPush push = new PprPush(null);
+    final SweepCut sweep = new SweepCut(null);
+    int[] order = new int[64];
+    double[] scores = new double[64];
+
+    private PprWorkspace() {}
+
+    /**
+     * Workspace of the current thread, bound to graph until {@link
+     * #release()} is called.
+     */
+    static PprWorkspace acquire(Graph graph) {
+        PprWorkspace ws = LOCAL.get();
+        ws.push.bind(graph);
+        ws.sweep.bind(graph);
+        return ws;
+    }
+
+    /**
+     * Drop the reference to the graph, so that idle worker threads do not
+     * keep it reachable.
+     */
+    void release() {
+        push.bind(null);
+        sweep.bind(null);
+    }
+
+    /**
+     * Copy the vertices pushed by the last run into order, sorted by
+     * decreasing estimate / degree, and return how many there are.
+     */
+    int rank() {
+        int n = candidates();
+        Sorting.byScoreDescending(order, scores, 0, n);
+        return n;
+    }
+
+    /**
+     * Copy the vertices pushed by the last run into order, with their
+     * estimate / degree in scores, and return how many there are.
+     */
+    int candidates() {
+        Graph graph = push.graph();
+        int n = push.size();
+        if (order.length < n) {
+            int capacity = Math.max(n, order.length * 2);
+            order = Arrays.copyOf(order, capacity);
+            scores = Arrays.copyOf(scores, capacity);
+        }
+        for (int i = 0; i < n; i++) {
+            order[i] = push.vertex(i);
+            scores[i] = push.estimate(i) / graph.degreeOf(order[i]);
+        }
+        return n;
+    }
+}
@@ -0,0 +1,26 @@
+package util.graph;
+
+/**
+ * Order in which {@link PprPush} pushes the vertices whose residual is
+ * above degree * tolerance. Every order converges to the same guarantee,
+ * they differ in the number of pushes needed to get there.
+ */
+public enum PushOrder {
+
+    /**
+     * First in, first out, in the order vertices crossed the threshold.
+     * The order of the original implementation.
+     */
+    FIFO,
+    /**
+     * Gauss-Southwell: always the vertex with the largest residual /
+     * degree, from an indexed binary heap.
+     */
+    MAX_RESIDUAL,
+    /**
+     * Approximate Gauss-Southwell: vertices are bucketed by the power of
+     * two of residual / (degree * tolerance) and the highest bucket is
+     * pushed first, first in first out within a bucket.
+     */
+    BUCKETS
+}
@@ -0,0 +1,149 @@
+package util.graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Quality of communities, measured on the edges of a graph.
+ * <p>
+ * For a block S, volume is the sum of the degrees of its members and cut
+ * the number of edges with exactly one end in S. Both follow from the
+ * number of neighbors each member has inside S, which graphs backed by
+ * bitmaps compute as an intersection count. Large blocks are split into
+ * vertex ranges scored on the fork/join pool, a partition is scored one
+ * block per task.
+ */
+public final class Quality {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private final Graph graph;
+
+    public Quality(Graph graph) {
+        this.graph = graph;
+    }
+
+    public Score score(Block block) {
+        int[] members = block.indices();
+        long[] sums;
+        if (members.length < PARALLEL_THRESHOLD) {
+            sums = sums(members, 0, members.length, block);
+        } else {
+            int chunks = (members.length + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+            sums = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> sums(members, c * PARALLEL_THRESHOLD,
+                            Math.min(members.length, (c + 1) * PARALLEL_THRESHOLD), block))
+                    .reduce(new long[2], (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+        }
+        return new Score(members.length, sums[0], sums[0] - sums[1], graph.volume());
+    }
+
+    /**
+     * Score every block of partition, in parallel.
+     */
+    public Score[] score(Partition partition) {
+        long graphVolume = graph.volume();
+        return partition.parallelStream().map(b -> {
+            int[] members = b.indices();
+            long[] sums = sums(members, 0, members.length, b);
+            return new Score(members.length, sums[0], sums[0] - sums[1], graphVolume);
+        }).toArray(Score[]::new);
+    }
+
+    /**
+     * Modularity of partition, the sum of the contributions of its blocks.
+     * Only meaningful if the blocks do not overlap.
+     */
+    public double modularity(Partition partition) {
+        return Arrays.stream(score(partition)).mapToDouble(Score::modularity).sum();
+    }
+
+    /**
+     * Conductance of a block with the given cut and volume in a graph of
+     * the given volume: cut / min(volume, volume of the rest of the graph).
+     * 0 for a block no edge leaves, 1 for a block that is the whole graph
+     * or has no edges. This is the conductance the sweep minimizes and
+     * every score reports.
+     */
+    public static double conductance(long cut, long volume, long graphVolume) {
+        long smaller = Math.min(volume, graphVolume - volume);
+        if (smaller <= 0) return 1;
+        return (double) cut / smaller;
+    }
+
+    /**
+     * Volume and number of neighbors inside block of members[from, to).
+     */
+    private long[] sums(int[] members, int from, int to, Block block) {
+        long volume = 0, inside = 0;
+        for (int i = from; i < to; i++) {
+            volume += graph.degreeOf(members[i]);
+            inside += graph.neighborsIn(members[i], block.bitmap());
+        }
+        return new long[]{volume, inside};
+    }
+
+    public static final class Score {
+
+        private final int size;
+        private final long volume, cut, graphVolume;
+
+        Score(int size, long volume, long cut, long graphVolume) {
+            this.size = size;
+            this.volume = volume;
+            this.cut = cut;
+            this.graphVolume = graphVolume;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Sum of the degrees of the members.
+         */
+        public long volume() {
+            return volume;
+        }
+
+        /**
+         * Number of edges leaving the block.
+         */
+        public long cut() {
+            return cut;
+        }
+
+        /**
+         * Number of edges inside the block, a self loop counting as half
+         * an edge.
+         */
+        public double internalEdges() {
+            return (volume - cut) / 2.;
+        }
+
+        /**
+         * See {@link Quality#conductance(long, long, long)}.
+         */
+        public double conductance() {
+            return Quality.conductance(cut, volume, graphVolume);
+        }
+
+        /**
+         * cut / volume + cut / volume of the rest of the graph.
+         */
+        public double normalizedCut() {
+            if (cut == 0) return 0;
+            return (double) cut / volume + (double) cut / (graphVolume - volume);
+        }
+
+        /**
+         * Contribution of the block to the modularity of a partition:
+         * internal edges / m - (volume / 2m)^2, where m is the number of
+         * edges in the graph.
+         */
+        public double modularity() {
+            double m2 = graphVolume;
+            return (volume - cut) / m2 - (volume / m2) * (volume / m2);
+        }
+    }
+}
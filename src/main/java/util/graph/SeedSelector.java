@@ -0,0 +1,153 @@
+package util.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selects seeds that cover the graph: a seed is picked among the unvisited
+ * vertices, everything within distance hops of it is marked visited, and
+ * this is repeated until every vertex is visited.
+ * <p>
+ * Candidates are taken in a fixed {@link Order} by a cursor that only
+ * moves forward, and every vertex enters a breadth first frontier at most
+ * once, so selection costs O(V + E). Large frontiers can optionally be
+ * expanded in parallel; the selected seeds do not depend on it.
+ */
+public final class SeedSelector {
+
+    public enum Order {
+        /** Lowest vertex index first. */
+        INDEX,
+        /** Highest degree first, ties by index. */
+        DEGREE_DESCENDING,
+        /** Lowest degree first, ties by index. */
+        DEGREE_ASCENDING
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private final Graph graph;
+    private Order order = Order.INDEX;
+    private boolean parallel;
+
+    public SeedSelector(Graph graph) {
+        this.graph = graph;
+    }
+
+    public SeedSelector order(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * Expand frontiers larger than a few thousand vertices on the common
+     * fork/join pool.
+     */
+    public SeedSelector parallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public List<Vertex> select(int distance) {
+        int[] seeds = selectIndices(distance);
+        List<Vertex> vertices = new ArrayList<>(seeds.length);
+        for (int s : seeds) vertices.add(graph.vertex(s));
+        return vertices;
+    }
+
+    public int[] selectIndices(int distance) {
+        if (distance < 1) throw new IllegalArgumentException("expected " +
+                "integer with higher value than 0");
+        int n = graph.indexBound();
+        int[] candidates = candidates(n);
+        AtomicBitSet visited = new AtomicBitSet(n);
+        int[] frontier = new int[n], next = new int[n];
+        int[] seeds = new int[16];
+        int numSeeds = 0;
+        for (int c : candidates) {
+            if (visited.get(c)) continue;
+            if (numSeeds == seeds.length) seeds = Arrays.copyOf(seeds, 2 * numSeeds);
+            seeds[numSeeds++] = c;
+            visited.set(c);
+            frontier[0] = c;
+            int size = 1;
+            for (int d = distance; d > 0 && size > 0; d--) {
+                size = parallel && size >= PARALLEL_THRESHOLD
+                        ? expandParallel(frontier, size, next, visited)
+                        : expand(frontier, 0, size, next, 0, visited);
+                int[] t = frontier;
+                frontier = next;
+                next = t;
+            }
+        }
+        return Arrays.copyOf(seeds, numSeeds);
+    }
+
+    /**
+     * Vertices with at least one neighbor, in selection order.
+     */
+    private int[] candidates(int n) {
+        int[] vertices = IntStream.range(0, n)
+                .filter(v -> graph.degreeOf(v) > 0).toArray();
+        if (order == Order.INDEX) return vertices;
+        // counting sort by degree, stable so ties stay ordered by index
+        int max = 0;
+        for (int v : vertices) max = Math.max(max, graph.degreeOf(v));
+        int[] count = new int[max + 2];
+        for (int v : vertices) {
+            int d = graph.degreeOf(v);
+            count[(order == Order.DEGREE_ASCENDING ? d : max - d) + 1]++;
+        }
+        for (int i = 1; i < count.length; i++) count[i] += count[i - 1];
+        int[] sorted = new int[vertices.length];
+        for (int v : vertices) {
+            int d = graph.degreeOf(v);
+            sorted[count[order == Order.DEGREE_ASCENDING ? d : max - d]++] = v;
+        }
+        return sorted;
+    }
+
+    /**
+     * Claim the unvisited neighbors of frontier[from, to) into next,
+     * starting at position at.
+     *
+     * @return position after the last claimed vertex
+     */
+    private int expand(int[] frontier, int from, int to, int[] next, int at,
+                       AtomicBitSet visited) {
+        int[] end = {at};
+        for (int f = from; f < to; f++) {
+            graph.forEachNeighbor(frontier[f], u -> {
+                if (visited.set(u)) next[end[0]++] = u;
+            });
+        }
+        return end[0];
+    }
+
+    private int expandParallel(int[] frontier, int size, int[] next,
+                               AtomicBitSet visited) {
+        int chunks = Math.min(size / 1024,
+                4 * Runtime.getRuntime().availableProcessors());
+        int[][] claimed = IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            int from = (int) ((long) size * c / chunks);
+            int to = (int) ((long) size * (c + 1) / chunks);
+            IntQueue local = new IntQueue(to - from);
+            for (int f = from; f < to; f++) {
+                graph.forEachNeighbor(frontier[f], u -> {
+                    if (visited.set(u)) local.add(u);
+                });
+            }
+            int[] out = new int[local.size()];
+            for (int i = 0; i < out.length; i++) out[i] = local.remove();
+            return out;
+        }).toArray(int[][]::new);
+        int at = 0;
+        for (int[] part : claimed) {
+            System.arraycopy(part, 0, next, at, part.length);
+            at += part.length;
+        }
+        return at;
+    }
+}
@@ -0,0 +1,106 @@
+package util.graph;
+
+/**
+ * Sorting of vertex indices by primitive scores.
+ */
+final class Sorting {
+
+    private static final int INSERTION_THRESHOLD = 16;
+
+    private Sorting() {}
+
+    /**
+     * Sort ids[from, to) and the parallel scores[from, to) by decreasing
+     * score. Ties are ordered by increasing id, so the result does not
+     * depend on the initial order.
+     */
+    static void byScoreDescending(int[] ids, double[] scores, int from, int to) {
+        while (to - from > INSERTION_THRESHOLD) {
+            int mid = (from + to) >>> 1;
+            int p = median(ids, scores, from, mid, to - 1);
+            double ps = scores[p];
+            int pid = ids[p];
+            int i = from, j = to - 1;
+            while (i <= j) {
+                while (before(ids[i], scores[i], pid, ps)) i++;
+                while (before(pid, ps, ids[j], scores[j])) j--;
+                if (i <= j) swap(ids, scores, i++, j--);
+            }
+            // recurse into the smaller half
+            if (j - from < to - i) {
+                byScoreDescending(ids, scores, from, j + 1);
+                from = i;
+            } else {
+                byScoreDescending(ids, scores, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            int id = ids[i];
+            double s = scores[i];
+            int j = i - 1;
+            while (j >= from && before(id, s, ids[j], scores[j])) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = s;
+        }
+    }
+
+    /**
+     * Arrange ids[0, n) and scores[0, n) as a binary heap with the element
+     * ordered first by {@link #byScoreDescending} at the root, in O(n).
+     */
+    static void heapify(int[] ids, double[] scores, int n) {
+        for (int i = n / 2 - 1; i >= 0; i--) siftDown(ids, scores, i, n);
+    }
+
+    /**
+     * Remove the root of a heap of size n, which is moved to position n - 1.
+     *
+     * @return id of the removed root
+     */
+    static int pop(int[] ids, double[] scores, int n) {
+        swap(ids, scores, 0, n - 1);
+        siftDown(ids, scores, 0, n - 1);
+        return ids[n - 1];
+    }
+
+    private static void siftDown(int[] ids, double[] scores, int i, int n) {
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= n) return;
+            if (c + 1 < n && before(ids[c + 1], scores[c + 1], ids[c], scores[c])) c++;
+            if (!before(ids[c], scores[c], ids[i], scores[i])) return;
+            swap(ids, scores, i, c);
+            i = c;
+        }
+    }
+
+    /**
+     * True if (a, as) is ordered before (b, bs).
+     */
+    static boolean before(int a, double as, int b, double bs) {
+        return as > bs || (as == bs && a < b);
+    }
+
+    private static int median(int[] ids, double[] scores, int a, int b, int c) {
+        if (before(ids[a], scores[a], ids[b], scores[b])) {
+            if (before(ids[b], scores[b], ids[c], scores[c])) return b;
+            return before(ids[a], scores[a], ids[c], scores[c]) ? c : a;
+        }
+        if (before(ids[a], scores[a], ids[c], scores[c])) return a;
+        return before(ids[b], scores[b], ids[c], scores[c]) ? c : b;
+    }
+
+    static void swap(int[] ids, double[] scores, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+}
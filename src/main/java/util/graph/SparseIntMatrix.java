@@ -0,0 +1,53 @@
+package util.graph;
+
+import java.util.Arrays;
+
+/**
+ * Square sparse matrix of int values stored row by row: row i holds its
+ * non-zero column indices in ascending order and the values at the same
+ * positions.
+ */
+final class SparseIntMatrix {
+
+    private static final int[] EMPTY = {};
+
+    private final int[][] columns;
+    private final int[][] values;
+
+    SparseIntMatrix(int rows) {
+        columns = new int[rows][];
+        values = new int[rows][];
+        Arrays.fill(columns, EMPTY);
+        Arrays.fill(values, EMPTY);
+    }
+
+    int rows() {
+        return columns.length;
+    }
+
+    /**
+     * Set row i. Safe to call concurrently for different rows.
+     */
+    void setRow(int i, int[] columns, int[] values) {
+        this.columns[i] = columns;
+        this.values[i] = values;
+    }
+
+    int get(int i, int j) {
+        if (i < 0 || i >= columns.length) return 0;
+        int k = Arrays.binarySearch(columns[i], j);
+        return k < 0 ? 0 : values[i][k];
+    }
+
+    int nonZeros(int i) {
+        return columns[i].length;
+    }
+
+    int column(int i, int k) {
+        return columns[i][k];
+    }
+
+    int value(int i, int k) {
+        return values[i][k];
+    }
+}
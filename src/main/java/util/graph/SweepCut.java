@@ -0,0 +1,163 @@
+package util.graph;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+
+/**
+ * Sweep over a ranking of vertices, computing the cut, volume and
+ * conductance of every prefix of the ranking.
+ * <p>
+ * Cut and volume are updated incrementally: adding vertex s to the prefix
+ * S adds degree(s) to the volume and degree(s) - 2 * |N(s) &cap; S| to the
+ * cut, less one for a self loop on s, which stays inside S. Membership in
+ * S is kept in a bitmap.
+ * Conductance of a prefix is {@link Quality#conductance(long, long, long)},
+ * the same measure {@link Graph#conductance(Block)} reports.
+ */
+public final class SweepCut {
+
+    private Graph graph;
+    private final RoaringBitmap members = new RoaringBitmap();
+
+    private int length, best;
+    private int volS, cutS;
+    private long graphVolume;
+    private double bestcond;
+    private int[] ranked = new int[0];
+    private int[] cut = new int[64];
+    private long[] volume = new long[64];
+    private double[] conductance = new double[64];
+
+    public SweepCut(Graph graph) {
+        this.graph = graph;
+    }
+
+    void bind(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Sweep over the first n vertices of order.
+     *
+     * @return length of the prefix with the lowest conductance, at least 1
+     */
+    public int run(int[] order, int n) {
+        start(n);
+        for (int i = 0; i < n; i++) {
+            add(order[i]);
+        }
+        return best;
+    }
+
+    /**
+     * Sweep over ids[0, n) in decreasing order of scores, ties by
+     * increasing id, until limit stops it. Candidates are taken from a heap
+     * built in place over ids and scores, so only the examined candidates
+     * are ordered. The examined vertices are available from {@link
+     * #vertex(int)}.
+     *
+     * @return length of the prefix with the lowest conductance, at least 1
+     */
+    public int run(int[] ids, double[] scores, int n, SweepLimit limit) {
+        start(n);
+        if (ranked.length < cut.length) ranked = new int[cut.length];
+        Sorting.heapify(ids, scores, n);
+        for (int heap = n; heap > 0; heap--) {
+            int s = Sorting.pop(ids, scores, heap);
+            ranked[length] = s;
+            add(s);
+            if (limit.stops(length, best)) break;
+        }
+        limit.record(length, n);
+        return best;
+    }
+
+    private void start(int n) {
+        members.clear();
+        if (cut.length < n) {
+            int capacity = Math.max(n, cut.length * 2);
+            cut = Arrays.copyOf(cut, capacity);
+            volume = Arrays.copyOf(volume, capacity);
+            conductance = Arrays.copyOf(conductance, capacity);
+        }
+        bestcond = 1.;
+        graphVolume = graph.volume();
+        volS = 0;
+        cutS = 0;
+        best = Math.min(1, n);
+        length = 0;
+    }
+
+    /**
+     * Extend the prefix with s.
+     */
+    private void add(int s) {
+        int degree = graph.degreeOf(s);
+        int inside = graph.neighborsIn(s, members);
+        volS += degree;
+        cutS += degree - 2 * inside - (graph.hasLoop(s) ? 1 : 0);
+        members.add(s);
+        double cond = Quality.conductance(cutS, volS, graphVolume);
+        int i = length++;
+        cut[i] = cutS;
+        volume[i] = volS;
+        conductance[i] = cond;
+        if (cond < bestcond) {
+            bestcond = cond;
+            best = i + 1;
+        }
+    }
+
+    /**
+     * Vertex at position i of the ranking examined by the last limited
+     * sweep.
+     */
+    public int vertex(int i) {
+        return ranked[i];
+    }
+
+    /**
+     * Number of prefixes in the last sweep, which is the number of
+     * candidates examined.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Length of the prefix with the lowest conductance in the last sweep.
+     */
+    public int best() {
+        return best;
+    }
+
+    /**
+     * Conductance of the prefix made up of the first k vertices.
+     */
+    public double conductance(int k) {
+        return conductance[k - 1];
+    }
+
+    public int cut(int k) {
+        return cut[k - 1];
+    }
+
+    public long volume(int k) {
+        return volume[k - 1];
+    }
+
+    /**
+     * Conductance of every prefix, element i is the prefix of length i + 1.
+     */
+    public double[] profile() {
+        return Arrays.copyOf(conductance, length);
+    }
+
+    /**
+     * Volume of the whole graph, cached by the graph.
+     */
+    public long graphVolume() {
+        return graph.volume();
+    }
+}
@@ -0,0 +1,62 @@
+package util.graph;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Early termination of a sweep. Instead of sorting every vertex touched by
+ * the push, candidates are taken from a heap in ranking order and the sweep
+ * stops once the prefix reaches maxSize vertices, or once plateau
+ * candidates in a row did not improve the best conductance. A value of 0
+ * disables either condition.
+ * <p>
+ * A limit can be shared by concurrent sweeps; it counts the candidates
+ * they examined and the candidates they could have examined.
+ */
+public final class SweepLimit {
+
+    private final int maxSize, plateau;
+    private final LongAdder examined = new LongAdder(),
+            candidates = new LongAdder();
+
+    public SweepLimit(int maxSize, int plateau) {
+        if (maxSize < 0 || plateau < 0) throw new IllegalArgumentException(
+                "expected non-negative limits");
+        this.maxSize = maxSize;
+        this.plateau = plateau;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int plateau() {
+        return plateau;
+    }
+
+    /**
+     * True if a sweep with a prefix of length k, whose best prefix has
+     * length best, should stop.
+     */
+    boolean stops(int k, int best) {
+        return (maxSize > 0 && k >= maxSize) || (plateau > 0 && k - best >= plateau);
+    }
+
+    void record(int examined, int candidates) {
+        this.examined.add(examined);
+        this.candidates.add(candidates);
+    }
+
+    /**
+     * Candidates examined by all sweeps using this limit.
+     */
+    public long examined() {
+        return examined.sum();
+    }
+
+    /**
+     * Candidates available to all sweeps using this limit.
+     */
+    public long candidates() {
+        return candidates.sum();
+    }
+}
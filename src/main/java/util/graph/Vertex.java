@@ -4,8 +4,8 @@ import java.util.stream.Stream;
 
 public class Vertex implements Comparable<Vertex> {
 
-    private Graph host;
-    private int index;
+    private final Graph host;
+    private final int index;
 
     public Vertex(int index, Graph host) {
         this.index = index;
@@ -23,6 +23,8 @@ public class Vertex implements Comparable<Vertex> {
 
     public int index() { return index; }
 
+    Graph graph() { return host; }
+
     public int degree() {
         return host.degreeOf(this);
     }
@@ -1,16 +1,48 @@
 package util.graph;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
 
+@RunWith(Parameterized.class)
 public class GraphTest {
 
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> implementations() {
+        return Arrays.asList(new Object[][]{
+                {"BitSetGraph", (Supplier<Graph>) BitSetGraph::new},
+                {"CsrGraph", (Supplier<Graph>) CsrGraph::new}
+        });
+    }
+
+    @Parameter(0)
+    public String name;
+
+    @Parameter(1)
+    public Supplier<Graph> factory;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public Graph newGraph() {
+        return factory.get();
+    }
+
     public File resourceToFile(String resource) {
         return new File(ClassLoader.getSystemResource(resource).getFile());
     }
@@ -19,43 +51,158 @@ public class GraphTest {
     public void testCommunityDetection() throws Exception {
 
         // test graph without self loops
-        Graph graph = new BitSetGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        Graph graph = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
         Block community = graph.communityDetectionPpr(graph.vertex(1));
         assertTrue(community.size() == 9);
 
         // testmethod translated from NetworkKit
-        graph = new BitSetGraph().loadFrom(resourceToFile("hep-th.graph"));
+        graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
         community = graph.communityDetectionPpr(graph.vertex(50), 0.1, 1e-5);
         assertTrue(graph.conductance(community) < 0.5); // originally 0.4,
-        // but this returns 0.466...
+        // this returns 0.421... (0.466... when counting boundary vertices)
+    }
+
+    /**
+     * Map based push, as originally translated from the gist, used as
+     * oracle for the primitive kernel.
+     */
+    static Map<Vertex, Double> referencePush(Vertex seed, double alpha,
+                                              double tolerance) {
+        Map<Vertex, Double> x = new HashMap<>();
+        Map<Vertex, Double> r = new HashMap<>();
+        r.put(seed, 1.);
+        Queue<Vertex> queue = new ArrayDeque<>();
+        queue.add(seed);
+        while (!queue.isEmpty()) {
+            Vertex v = queue.remove();
+            double vx = x.getOrDefault(v, 0.) + (1 - alpha) * r.get(v);
+            x.put(v, vx);
+            double mass = alpha * r.get(v) / (2 * v.degree());
+            v.neighbors().sequential().forEach(u -> {
+                double ur = r.getOrDefault(u, 0.);
+                double rdegtol = u.degree() * tolerance;
+                if (ur < rdegtol && (ur + mass) >= rdegtol)
+                    queue.add(u);
+                r.put(u, ur + mass);
+            });
+            r.put(v, mass * v.degree());
+            if (r.get(v) >= v.degree() * tolerance)
+                queue.add(v);
+        }
+        return x;
+    }
+
+    @Test
+    public void testPushMatchesReference() throws Exception {
+        Graph graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        PprPush push = new PprPush(graph);
+        for (int seed = 1; seed < 8000; seed += 397) {
+            Map<Vertex, Double> expected = referencePush(graph.vertex(seed),
+                    0.99, 0.01);
+            push.run(seed, 0.99, 0.01);
+            assertThat(push.size(), is(expected.size()));
+            for (int i = 0; i < push.size(); i++) {
+                assertEquals(expected.get(graph.vertex(push.vertex(i))),
+                        push.estimate(i), 0.);
+            }
+        }
+    }
+
+    @Test
+    public void testSweepProfile() throws Exception {
+        Graph graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        PprWorkspace ws = PprWorkspace.acquire(graph);
+        try {
+            ws.push.run(50, 0.99, 1e-4);
+            int n = ws.rank();
+            SweepCut sweep = ws.sweep;
+            int best = sweep.run(ws.order, n);
+            assertThat(sweep.length(), is(n));
+            assertThat(sweep.graphVolume(), is(graph.vertices().stream()
+                    .mapToLong(Vertex::degree).sum()));
+            Set<Integer> prefix = new HashSet<>();
+            for (int k = 1; k <= n; k++) {
+                prefix.add(ws.order[k - 1]);
+                assertTrue(sweep.conductance(best) <= sweep.conductance(k));
+                if (k % 50 != 1) continue;
+                long cut = 0, volume = 0;
+                for (int v : prefix) {
+                    volume += graph.degreeOf(v);
+                    cut += graph.vertex(v).neighbors()
+                            .filter(u -> !prefix.contains(u.index())).count();
+                }
+                assertThat(sweep.cut(k), is((int) cut));
+                assertThat(sweep.volume(k), is(volume));
+                assertEquals(Quality.conductance(cut, volume, sweep.graphVolume()),
+                        sweep.conductance(k), 0);
+            }
+            Block community = new Block(graph);
+            for (int k = 0; k < best; k++) community.add(ws.order[k]);
+            assertEquals(graph.conductance(community), sweep.conductance(best), 0);
+        } finally {
+            ws.release();
+        }
+    }
+
+    @Test
+    public void testSweepSelfLoop() {
+        Graph g = newGraph();
+        g.addEdge(0, 0);
+        g.addEdge(0, 1);
+        g.addEdge(1, 2);
+        g.addEdge(2, 3);
+        g.addEdge(3, 0);
+        SweepCut sweep = new SweepCut(g);
+        sweep.run(new int[]{0, 1, 2}, 3);
+        Block community = new Block(g);
+        for (int k = 1; k <= 3; k++) {
+            community.add(k - 1);
+            assertThat(sweep.cut(k), is((int) new Quality(g).score(community).cut()));
+            assertEquals(g.conductance(community), sweep.conductance(k), 0);
+        }
     }
 
     @Test
     public void testParallelCommunityDetection() throws Exception {
 
         // test graph without self loops
-        Graph graph = new BitSetGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        Graph graph = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
         List<Vertex> seeds = Arrays.asList(graph.vertex(1), graph
                 .vertex(2));
         Partition community = graph.communityDetectionPpr(seeds, 0.99, 0.01);
         assertThat(community.get(0).size(), is(9));
         assertThat(community.get(0), is(community.get(1)));
 
+        // workspaces are shared between seeds, graphs and threads
+        graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        seeds = graph.selectSeeds(4);
+        community = graph.communityDetectionPpr(seeds, 0.99, 0.01);
+        for (int i = 0; i < seeds.size(); i += 97) {
+            assertThat(community.get(i), is(graph.communityDetectionPpr(
+                    seeds.get(i), 0.99, 0.01)));
+        }
     }
 
 
         @Test
     public void testVertex() throws Exception {
-        Graph g = new BitSetGraph();
+        Graph g = newGraph();
         assertEquals(g.vertex(1), g.vertex(1));
         g.addEdge(1, 2);
         g.addEdge(2, 1);
         assertThat(g.vertex(1).degree(), is(1));
+        assertSame(g.vertex(2), g.vertex(2));
+
+        // indices outside the graph are not cached
+        assertThat(g.vertex(Integer.MAX_VALUE).index(), is(Integer.MAX_VALUE));
+        assertThat(g.vertex(2000000000).index(), is(2000000000));
+        assertNotSame(g.vertex(3), g.vertex(3));
+        assertThat(g.indexBound(), is(3));
     }
 
     @Test
     public void testRead() throws Exception {
-        Graph graph = new BitSetGraph().loadFrom(resourceToFile("tiny_01.graph"));
+        Graph graph = newGraph().loadFrom(resourceToFile("tiny_01.graph"));
         assertThat(graph.numVertices(), is(7));
         assertThat(graph.numEdges(), is(11));
         Vertex v1 = graph.vertex(1);
@@ -66,9 +213,86 @@ public class GraphTest {
                         graph.vertex(2))));
     }
 
+    @Test
+    public void testAdjacency() throws Exception {
+        Graph expected = new BitSetGraph().loadFrom(resourceToFile("hep-th.graph"));
+        Graph graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        assertThat(graph.numVertices(), is(expected.numVertices()));
+        assertThat(graph.numEdges(), is(expected.numEdges()));
+        for (Vertex v : expected.vertices()) {
+            assertThat(graph.vertex(v.index()).degree(), is(v.degree()));
+            assertThat(graph.neighborsOf(v).map(Vertex::index)
+                    .collect(Collectors.toList()), is(v.neighbors()
+                    .map(Vertex::index).collect(Collectors.toList())));
+        }
+    }
+
+    @Test
+    public void testMappedLoader() throws Exception {
+        for (String resource : Arrays.asList("tiny_01.graph", "pprcd.py.graph",
+                "hep-th.graph")) {
+            Graph expected = new BitSetGraph()
+                    .loadMetis(resourceToFile(resource));
+            Graph graph = newGraph().loadMetisMapped(resourceToFile(resource));
+            assertThat(graph.numVertices(), is(expected.numVertices()));
+            assertThat(graph.numEdges(), is(expected.numEdges()));
+            for (Vertex v : expected.vertices()) {
+                assertThat(graph.neighborsOf(v).map(Vertex::index)
+                        .collect(Collectors.toList()), is(v.neighbors()
+                        .map(Vertex::index).collect(Collectors.toList())));
+            }
+        }
+        File f = folder.newFile("weighted.graph");
+        Files.write(f.toPath(), Arrays.asList("% comment", "", "2 1 1",
+                "2 5", "1 5"));
+        try {
+            newGraph().loadMetisMapped(f);
+            fail("expected unsupported format");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Found unsupported format in file: 1"));
+        }
+
+        // a bogus header does not size the buffers
+        f = folder.newFile("bogus.graph");
+        Files.write(f.toPath(), Arrays.asList("2000000000 2000000000", "2", "1"));
+        Graph graph = newGraph().loadMetisMapped(f);
+        assertThat(graph.numEdges(), is(1));
+        assertTrue(graph.indexBound() <= 3);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        Graph expected = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        File f = folder.newFile("hep-th" + GraphSnapshot.EXTENSION),
+                bitmaps = folder.newFile("hep-th-bitmaps" + GraphSnapshot.EXTENSION);
+        GraphSnapshot.write(expected, f);
+        GraphSnapshot.write(expected, bitmaps, true);
+        for (Graph graph : Arrays.asList(new MappedGraph().loadFrom(f),
+                newGraph().loadFrom(f), new ImmutableBitSetGraph().loadFrom(f),
+                GraphSnapshot.open(bitmaps), newGraph().loadFrom(bitmaps),
+                new ImmutableBitSetGraph().loadFrom(resourceToFile("hep-th.graph")))) {
+            assertThat(graph.numVertices(), is(expected.numVertices()));
+            assertThat(graph.numEdges(), is(expected.numEdges()));
+            for (Vertex v : expected.vertices()) {
+                assertThat(graph.neighborsOf(v).map(Vertex::index)
+                        .collect(Collectors.toList()), is(v.neighbors()
+                        .map(Vertex::index).collect(Collectors.toList())));
+            }
+            assertThat(graph.communityDetectionPpr(graph.vertex(50)),
+                    is(expected.communityDetectionPpr(expected.vertex(50))));
+        }
+        ImmutableBitSetGraph.checkBound(ImmutableBitSetGraph.MAX_VERTICES);
+        try {
+            ImmutableBitSetGraph.checkBound(1 << 28);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("too many vertices"));
+        }
+    }
+
     @Test
     public void testJoin() throws Exception {
-        Graph g = new BitSetGraph();
+        Graph g = newGraph();
         g.addEdge(1, 2);
         g.addEdge(1, 3);
         Partition p = new Partition();
@@ -86,13 +310,502 @@ public class GraphTest {
         assertThat(j.size(jg.edge(0, 0)), is(1));
     }
 
+    @Test
+    public void testCommunityStream() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        List<Vertex> seeds = g.selectSeeds(4).subList(0, 200);
+        Partition expected = g.communityDetectionPpr(seeds, 0.99, 0.01);
+        Partition ordered = new Partition();
+        try (CommunityStream stream = g.communityStream(seeds, 0.99, 0.01, 3, true)) {
+            while (stream.hasNext()) {
+                ordered.add(stream.next());
+                assertThat(stream.seedIndex(), is(ordered.size() - 1));
+            }
+        }
+        assertThat(ordered, is(expected));
+        Block[] unordered = new Block[seeds.size()];
+        try (CommunityStream stream = g.communityStream(seeds, 0.99, 0.01, 8, false)) {
+            while (stream.hasNext()) {
+                Block b = stream.next();
+                unordered[stream.seedIndex()] = b;
+            }
+        }
+        assertThat(Arrays.asList(unordered), is(expected));
+        Block[] sunk = new Block[seeds.size()];
+        g.communityDetectionPpr(seeds, 0.99, 0.01, (b, i) -> sunk[i] = b);
+        assertThat(Arrays.asList(sunk), is(expected));
+    }
+
+    @Test(timeout = 10000)
+    public void testCommunityStreamError() throws Exception {
+        Graph g = new CsrGraph() {
+            @Override
+            public void forEachNeighbor(int v, IntConsumer action) {
+                if (v == 3) throw new AssertionError("broken vertex");
+                super.forEachNeighbor(v, action);
+            }
+        };
+        // two paths, the push from 0 never reaches 3
+        for (int v : new int[]{0, 1, 3, 4}) g.addEdge(v, v + 1);
+        List<Vertex> seeds = Arrays.asList(g.vertex(0), g.vertex(3), g.vertex(5));
+        try (CommunityStream stream = g.communityStream(seeds, 0.99, 0.01, 1, true)) {
+            stream.next();
+            try {
+                stream.next();
+                fail();
+            } catch (AssertionError e) {
+                assertThat(e.getMessage(), is("broken vertex"));
+            }
+            assertFalse(stream.hasNext());
+        }
+    }
+
+    @Test
+    public void testJoinMatchesPairwise() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        List<Vertex> seeds = g.selectSeeds(4).subList(0, 40);
+        Partition p = g.communityDetectionPpr(seeds, 0.99, 0.01);
+        Join j = g.join(p);
+        for (int a = 0; a < p.size(); a++) {
+            Block source = p.get(a);
+            assertThat(j.size(j.graph().vertex(a)), is(source.size()));
+            for (int b = a; b < p.size(); b++) {
+                Block target = p.get(b);
+                long pairs = source.stream().flatMap(Vertex::neighbors)
+                        .filter(target::contains).count();
+                assertThat(j.size(j.graph().edge(a, b)),
+                        is((int) (a == b ? pairs / 2 : pairs)));
+            }
+        }
+        long overlaps = 0;
+        for (int a = 0; a < p.size(); a++) {
+            for (int b = a + 1; b < p.size(); b++) {
+                Block target = p.get(b);
+                if (p.get(a).stream().anyMatch(target::contains)) overlaps++;
+            }
+        }
+        assertThat((long) j.overlap().size(), is(overlaps));
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        Block a = new Block(), b = new Block();
+        try {
+            a.add(1);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(a.isEmpty());
+        }
+        for (int v = 1; v <= 6; v++) a.add(g.vertex(v));
+        a.add(6);
+        for (int v = 4; v <= 9; v++) b.add(g.vertex(v));
+        assertThat(a.size(), is(6));
+        assertTrue(a.contains(g.vertex(3)));
+        assertFalse(a.contains(g.vertex(7)));
+        assertThat(a.intersectionSize(b), is(3));
+        assertThat(a.union(b).size(), is(9));
+        assertThat(a.difference(b).indices(), is(new int[]{1, 2, 3}));
+        assertThat(a.intersection(b).indices(), is(new int[]{4, 5, 6}));
+        Set<Vertex> hashed = new HashSet<>(a);
+        assertThat(a, is(hashed));
+        assertThat(hashed, is((Set<Vertex>) a));
+        assertThat(a.hashCode(), is(hashed.hashCode()));
+        Set<Integer> boundary = g.cut(a).map(Vertex::index)
+                .collect(Collectors.toSet());
+        Set<Integer> expected = new HashSet<>();
+        for (Vertex v : a) {
+            v.neighbors().filter(u -> !a.contains(u))
+                    .forEach(u -> expected.add(u.index()));
+        }
+        assertThat(boundary, is(expected));
+    }
+
+    @Test
+    public void testPrimitiveAccess() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        assertSame(g.vertex(3), g.vertex(3));
+        assertSame(g.vertex(3), g.vertex(Integer.valueOf(3)));
+        for (int v = 0; v < g.indexBound(); v++) {
+            int[] expected = g.degreeOf(v) == 0 ? new int[0] : g.neighborsOf(
+                    g.vertex(v)).mapToInt(Vertex::index).toArray();
+            assertThat(g.neighborArray(v), is(expected));
+            assertThat(g.degreeOf(v), is(expected.length));
+        }
+    }
+
+    @Test
+    public void testSweepLimit() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        List<Vertex> seeds = g.selectSeeds(4).subList(0, 100);
+        SweepLimit all = new SweepLimit(0, Integer.MAX_VALUE),
+                small = new SweepLimit(5, 0);
+        for (Vertex s : seeds) {
+            Block full = g.communityDetectionPpr(s, 0.99, 0.001);
+            assertThat(g.communityDetectionPpr(s, 0.99, 0.001, all), is(full));
+            Block limited = g.communityDetectionPpr(s, 0.99, 0.001, small);
+            assertTrue(limited.size() <= 5);
+            if (full.size() <= 5) assertThat(limited, is(full));
+        }
+        assertThat(all.examined(), is(all.candidates()));
+        assertTrue(small.examined() <= 5 * seeds.size());
+        assertThat(small.candidates(), is(all.candidates()));
+    }
+
+    @Test
+    public void testQuality() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        Partition p = g.communityDetectionPpr(g.selectSeeds(4).subList(0, 50),
+                0.99, 0.001);
+        Quality quality = new Quality(g);
+        Quality.Score[] scores = quality.score(p);
+        long m2 = g.vertices().stream().mapToLong(Vertex::degree).sum();
+        double modularity = 0;
+        for (int i = 0; i < p.size(); i++) {
+            Block b = p.get(i);
+            long volume = b.stream().mapToLong(Vertex::degree).sum();
+            long cut = b.stream().flatMap(Vertex::neighbors)
+                    .filter(u -> !b.contains(u)).count();
+            Quality.Score score = quality.score(b);
+            assertThat(score.volume(), is(volume));
+            assertThat(score.cut(), is(cut));
+            assertThat(scores[i].cut(), is(cut));
+            assertEquals((double) cut / Math.min(volume, m2 - volume),
+                    score.conductance(), 1e-12);
+            assertEquals(g.conductance(b), score.conductance(), 0);
+            assertEquals((double) cut / volume + (double) cut / (m2 - volume),
+                    score.normalizedCut(), 1e-12);
+            modularity += (volume - cut) / (double) m2
+                    - Math.pow(volume / (double) m2, 2);
+        }
+        assertEquals(modularity, quality.modularity(p), 1e-12);
+        // the whole graph is scored in parallel ranges
+        Block all = new Block();
+        g.vertices().forEach(all::add);
+        Quality.Score whole = quality.score(all);
+        assertThat(whole.cut(), is(0L));
+        assertThat(whole.volume(), is(m2));
+        assertEquals(0, whole.modularity(), 1e-12);
+    }
+
+    @Test
+    public void testVertexOrder() throws Exception {
+        File f = resourceToFile("hep-th.graph");
+        Graph original = newGraph().loadFrom(f);
+        long bandwidth = 0, rcmBandwidth = 0;
+        for (VertexOrder order : VertexOrder.values()) {
+            Graph g = newGraph().loadFrom(f, order);
+            assertThat(g.numEdges(), is(original.numEdges()));
+            assertThat(g.numVertices(), is(original.numVertices()));
+            for (int v = 0; v < g.indexBound(); v++) {
+                int o = g.originalIndex(v);
+                assertThat(g.relabeledIndex(o), is(v));
+                int[] neighbors = g.neighborArray(v);
+                for (int i = 0; i < neighbors.length; i++) {
+                    neighbors[i] = g.originalIndex(neighbors[i]);
+                }
+                Arrays.sort(neighbors);
+                assertThat(neighbors, is(original.neighborArray(o)));
+                for (int u : g.neighborArray(v)) {
+                    if (order == VertexOrder.NONE) bandwidth = Math.max(bandwidth, Math.abs(u - v));
+                    if (order == VertexOrder.RCM) rcmBandwidth = Math.max(rcmBandwidth, Math.abs(u - v));
+                }
+            }
+        }
+        assertTrue(rcmBandwidth < bandwidth);
+
+        Graph g = newGraph().loadFrom(resourceToFile("pprcd.py.graph"), VertexOrder.RCM);
+        Block community = g.communityDetectionPpr(g.vertex(g.relabeledIndex(1)));
+        Set<Integer> members = new HashSet<>();
+        community.forEachIndex(v -> members.add(g.originalIndex(v)));
+        assertThat(members, is(IntStream.rangeClosed(1, 9).boxed()
+                .collect(Collectors.toSet())));
+    }
+
+    @Test
+    public void testGenerator() throws Exception {
+        File metis = folder.newFile("lfr.graph"),
+                spilled = folder.newFile("lfr-spilled.graph"),
+                snapshot = folder.newFile("lfr" + GraphSnapshot.EXTENSION);
+        GraphGenerator lfr = GraphGenerator.lfr(2000, 12, 60, 0.1, 20, 100).seed(7);
+        long edges = lfr.writeMetis(metis);
+        assertThat(lfr.bufferEdges(1000).writeMetis(spilled), is(edges));
+        assertThat(lfr.writeSnapshot(snapshot), is(edges));
+        Graph g = newGraph().loadFrom(metis);
+        for (Graph other : Arrays.asList(newGraph().loadFrom(spilled),
+                newGraph().loadFrom(snapshot), GraphSnapshot.open(snapshot))) {
+            assertThat(other.numEdges(), is(g.numEdges()));
+            for (int v = 0; v < g.indexBound(); v++) {
+                assertThat(other.neighborArray(v), is(g.neighborArray(v)));
+            }
+        }
+        assertThat(g.volume(), is(2 * edges));
+
+        // the planted communities are well separated and found again
+        Partition planted = lfr.communities(g);
+        assertThat(planted.stream().mapToInt(Block::size).sum(), is(2000));
+        Quality quality = new Quality(g);
+        for (Block b : planted) assertTrue(quality.score(b).conductance() < 0.3);
+        Block truth = planted.get(0);
+        Block found = g.communityDetectionPpr(g.vertex(truth.indices()[0]), 0.99, 0.0001);
+        assertTrue(found.intersectionSize(truth) > 0.8 * Math.max(found.size(), truth.size()));
+
+        // isolated vertices are empty lines, which the loaders must keep
+        GraphGenerator rmat = GraphGenerator.rmat(12, 3000).seed(7);
+        GraphGenerator er = GraphGenerator.erdosRenyi(5000, 2000).seed(7);
+        for (GraphGenerator generator : Arrays.asList(rmat, er)) {
+            File file = folder.newFile(), csr = folder.newFile();
+            long written = generator.writeMetis(file);
+            assertThat(generator.writeSnapshot(csr), is(written));
+            Graph expected = GraphSnapshot.open(csr);
+            assertThat(expected.volume(), is(2 * written));
+            for (Graph loaded : Arrays.asList(newGraph().loadMetis(file),
+                    newGraph().loadMetisMapped(file))) {
+                assertThat(loaded.volume(), is(2 * written));
+                assertTrue(loaded.indexBound() <= expected.indexBound());
+                for (int v = 0; v < loaded.indexBound(); v++) {
+                    assertThat(loaded.degreeOf(v), is(expected.degreeOf(v)));
+                    if (expected.degreeOf(v) > 0) {
+                        assertThat(loaded.neighborArray(v), is(expected.neighborArray(v)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        List<Vertex> seeds = g.selectSeeds(4);
+        Partition expected = g.communityDetectionPpr(seeds, 0.99, 0.001);
+        Metrics metrics = new Metrics();
+        g.setMetrics(metrics);
+        assertThat(g.communityDetectionPpr(seeds, 0.99, 0.001), is(expected));
+        g.setMetrics(null);
+        g.communityDetectionPpr(seeds, 0.99, 0.001);
+
+        long pushes = 0, sweep = 0;
+        int maxQueue = 0;
+        PprPush push = new PprPush(g);
+        for (Vertex s : seeds) {
+            push.run(s.index(), 0.99, 0.001);
+            pushes += push.pushes();
+            sweep += push.size();
+            maxQueue = Math.max(maxQueue, push.maxQueue());
+        }
+        assertThat(metrics.getSeeds(), is((long) seeds.size()));
+        assertThat(metrics.getPushes(), is(pushes));
+        assertThat(metrics.getSweepLength(), is(sweep));
+        assertThat(metrics.getQueueHighWater(), is((long) maxQueue));
+        assertThat(metrics.seedLatency().count(), is((long) seeds.size()));
+        assertTrue(metrics.seedLatency().percentile(0.5) <= metrics.seedLatency().max());
+        assertTrue(metrics.nanos(Metrics.Phase.PUSH) > 0);
+
+        File csv = folder.newFile("metrics.csv");
+        metrics.write(csv);
+        assertTrue(Files.readAllLines(csv.toPath()).contains("pushes," + pushes));
+        metrics.reset();
+        assertThat(metrics.getPushes(), is(0L));
+
+        for (long v : new long[]{0, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            int b = LatencyHistogram.bucket(v);
+            assertTrue(v <= LatencyHistogram.upperBound(b));
+            assertTrue(b == 0 || v > LatencyHistogram.upperBound(b - 1));
+        }
+    }
+
+    @Test
+    public void testGraphBuilder() throws Exception {
+        Random random = new Random(3);
+        int m = 20000;
+        int[] sources = new int[m], targets = new int[m];
+        for (int i = 0; i < m; i++) {
+            // duplicates, reversed duplicates and self loops included
+            sources[i] = random.nextInt(3000);
+            targets[i] = i % 50 == 0 ? sources[i] : random.nextInt(3000);
+        }
+        Graph expected = newGraph();
+        for (int i = 0; i < m; i++) expected.addEdge(sources[i], targets[i]);
+        expected.optimize();
+
+        GraphBuilder builder = new GraphBuilder(8);
+        IntStream.range(0, m / 1000).parallel().forEach(b -> {
+            if (b % 2 == 0) {
+                builder.addEdges(sources, targets, b * 1000, (b + 1) * 1000);
+            } else {
+                for (int i = b * 1000; i < (b + 1) * 1000; i++) {
+                    builder.addEdge(sources[i], targets[i]);
+                }
+            }
+        });
+        Graph g = builder.build(newGraph());
+        assertThat(g.numVertices(), is(expected.numVertices()));
+        assertThat(g.numEdges(), is(expected.numEdges()));
+        assertThat(g.indexBound(), is(expected.indexBound()));
+        for (int v = 0; v < g.indexBound(); v++) {
+            assertThat(g.neighborArray(v), is(expected.neighborArray(v)));
+        }
+        // the builder is empty again
+        assertThat(builder.build(newGraph()).numVertices(), is(0));
+    }
+
+    @Test
+    public void testPprState() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        Vertex seed = g.vertex(50);
+        double[] tolerances = {0.01, 0.001, 0.0001};
+        PprState state = new PprState(g, seed, 0.99);
+        PprPush resumed = new PprPush(g), fresh = new PprPush(g);
+        resumed.run(seed.index(), 0.99, tolerances[0]);
+        for (double tolerance : tolerances) {
+            state.refine(tolerance);
+            resumed.resume(tolerance);
+            assertTrue(resumed.converged());
+            assertThat(state.pushes(), is(resumed.pushes()));
+            fresh.run(seed.index(), 0.99, tolerance);
+            assertTrue(state.pushes() <= 1.1 * fresh.pushes());
+        }
+        assertThat(new PprState(g, seed, 0.99).refine(0.01).community(),
+                is(g.communityDetectionPpr(seed, 0.99, 0.01)));
+        try {
+            state.refine(0.01);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        List<Block> levels = g.communityDetectionPpr(seed, 0.99,
+                new double[]{0.0001, 0.01, 0.001});
+        assertThat(levels.get(1), is(g.communityDetectionPpr(seed, 0.99, 0.01)));
+        for (Block b : levels) assertTrue(b.contains(seed));
+    }
+
+    @Test
+    public void testPushOrder() throws Exception {
+        Graph g = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        PprPush fifo = new PprPush(g);
+        for (PushOrder order : PushOrder.values()) {
+            PprPush push = new PprPush(g).order(order);
+            long pushes = 0, fifoPushes = 0;
+            for (int seed = 1; seed < 8000; seed += 397) {
+                push.run(seed, 0.99, 0.0001);
+                fifo.run(seed, 0.99, 0.0001);
+                assertTrue(push.converged());
+                pushes += push.pushes();
+                fifoPushes += fifo.pushes();
+                // every order estimates the same vector within the tolerance
+                Map<Integer, Double> expected = new HashMap<>();
+                for (int i = 0; i < fifo.size(); i++) {
+                    expected.put(fifo.vertex(i), fifo.estimate(i));
+                }
+                for (int i = 0; i < push.size(); i++) {
+                    assertEquals(expected.getOrDefault(push.vertex(i), 0.),
+                            push.estimate(i), 0.01);
+                }
+            }
+            if (order != PushOrder.FIFO) assertTrue(pushes < fifoPushes);
+            push.resume(0.00001);
+            assertTrue(push.converged());
+        }
+
+        g = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        Block expected = g.communityDetectionPpr(g.vertex(1));
+        for (PushOrder order : PushOrder.values()) {
+            g.setPushOrder(order);
+            assertThat(g.communityDetectionPpr(g.vertex(1)), is(expected));
+        }
+    }
+
+    @Test
+    public void testDetectionScheduler() throws Exception {
+        Graph graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        List<Vertex> seeds = graph.selectSeeds(4);
+        try (DetectionScheduler scheduler = new DetectionScheduler(graph, 3)) {
+            // seeds by decreasing volume of their neighborhood
+            int[] order = scheduler.order(seeds);
+            assertThat(order.length, is(seeds.size()));
+            for (int i = 1; i < order.length; i++) {
+                assertTrue(scheduler.cost(seeds.get(order[i - 1]).index())
+                        >= scheduler.cost(seeds.get(order[i]).index()));
+            }
+            Partition expected = graph.communityDetectionPpr(seeds, 0.99, 0.01);
+            assertThat(scheduler.batch(1).run(seeds, 0.99, 0.01), is(expected));
+
+            Block[] found = new Block[seeds.size()];
+            scheduler.run(seeds, 0.99, 0.01, (block, i) -> {
+                assertNull(found[i]);
+                found[i] = block;
+            });
+            assertThat(Arrays.asList(found), is(expected));
+        }
+    }
+
+    @Test
+    public void testCoverageDetection() throws Exception {
+        // seeds 1 and 2 find the same community, the second is skipped
+        Graph graph = newGraph().loadFrom(resourceToFile("pprcd.py.graph"));
+        List<Vertex> seeds = Arrays.asList(graph.vertex(1), graph.vertex(2));
+        CoverageDetection detection = new CoverageDetection(graph);
+        Partition partition = detection.run(seeds, 0.99, 0.01);
+        assertThat(partition.size(), is(1));
+        assertThat(detection.runs(), is(1L));
+        assertThat(detection.skipped(), is(1L));
+        assertThat(partition.get(0), is(graph.communityDetectionPpr(graph.vertex(1))));
+
+        graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        seeds = graph.selectSeeds(1);
+        Block all = new Block(graph);
+        for (Block b : graph.communityDetectionPpr(seeds, 0.99, 0.001)) all.addAll(b);
+        double full = (double) all.size() / graph.numVertices();
+        detection = new CoverageDetection(graph, new DetectionScheduler(graph, 2));
+        partition = detection.run(seeds, 0.99, 0.001);
+        assertThat(detection.runs() + detection.skipped(), is((long) seeds.size()));
+        assertThat((long) partition.size(), is(detection.runs()));
+        assertTrue(detection.runs() < seeds.size() / 2);
+        assertTrue(detection.coverage() > full - 0.05);
+        all = new Block(graph);
+        for (Block b : partition) all.addAll(b);
+        assertEquals(detection.coverage(), (double) all.size() / graph.numVertices(), 0);
+
+        // the target stops detection early
+        detection.target(0.5).run(seeds, 0.99, 0.001);
+        assertTrue(detection.coverage() >= 0.5);
+        assertTrue(detection.runs() < seeds.size() / 10);
+    }
+
     @Test
     public void testSelectSeeds() throws Exception {
-        Graph graph = new BitSetGraph().loadFrom(resourceToFile("tiny_01.graph"));
+        Graph graph = newGraph().loadFrom(resourceToFile("tiny_01.graph"));
         List<Vertex> seeds = graph.selectSeeds(2);
         assertThat(seeds.size(), is(2));
         seeds = graph.selectSeeds(3);
         assertThat(seeds.size(), is(1));
     }
 
+    @Test
+    public void testSeedSelector() throws Exception {
+        Graph graph = newGraph().loadFrom(resourceToFile("hep-th.graph"));
+        for (int distance = 1; distance <= 3; distance++) {
+            int[] seeds = new SeedSelector(graph).selectIndices(distance);
+            assertThat(new SeedSelector(graph).parallel(true)
+                    .selectIndices(distance), is(seeds));
+            // every vertex is within distance hops of a seed
+            Set<Integer> covered = new HashSet<>();
+            for (int s : seeds) {
+                Set<Integer> level = Collections.singleton(s);
+                covered.add(s);
+                for (int d = 0; d < distance; d++) {
+                    Set<Integer> next = new HashSet<>();
+                    for (int v : level) graph.forEachNeighbor(v, next::add);
+                    covered.addAll(next);
+                    level = next;
+                }
+            }
+            assertThat(covered.size(), is(graph.numVertices()));
+        }
+        int[] hubs = new SeedSelector(graph)
+                .order(SeedSelector.Order.DEGREE_DESCENDING).selectIndices(2);
+        int max = graph.vertices().stream().mapToInt(Vertex::degree).max().getAsInt();
+        assertThat(graph.degreeOf(hubs[0]), is(max));
+    }
+
 }
\ No newline at end of file